@@ -0,0 +1,148 @@
+package fr.nhsoul.dynamo.common.util;
+
+import fr.nhsoul.dynamo.common.model.ServerDelta;
+import fr.nhsoul.dynamo.common.model.ServerEvent;
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+import fr.nhsoul.dynamo.common.model.proto.ServerMessagesProto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Heartbeat delta (protocole v2) et heartbeat complet : codec direct contre l'ancien passage par les builders
+// et le parseur générés, suivi d'une copie dans le modèle.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ServerEventCodecBenchmark {
+
+    @Param({"delta", "full"})
+    public String shape;
+
+    private ServerEvent event;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        event = new ServerEvent();
+        event.setType(ServerEvent.EventType.HEARTBEAT);
+        event.setTimestamp(System.currentTimeMillis());
+        event.setServerId(1234);
+        event.setSequence(987_654);
+
+        if (shape.equals("delta")) {
+            ServerDelta delta = new ServerDelta();
+            delta.setCurrentPlayers(57);
+            delta.setTps(19.97);
+            delta.setMspt(23.4);
+            event.setDelta(delta);
+        } else {
+            ServerInfo serverInfo = new ServerInfo("survival-12", "10.0.3.17", 25565, List.of("survival", "eu"));
+            serverInfo.setCurrentPlayers(57);
+            serverInfo.setMaxPlayers(100);
+            serverInfo.setWeight(1);
+            serverInfo.setTps(19.97);
+            serverInfo.setMspt(23.4);
+            event.setServerInfo(serverInfo);
+        }
+
+        data = ServerEventCodec.encodeEvent(event);
+    }
+
+    @Benchmark
+    public byte[] codecEncode() {
+        return ServerEventCodec.encodeEvent(event);
+    }
+
+    @Benchmark
+    public byte[] generatedEncode() {
+        return toProto(event).toByteArray();
+    }
+
+    @Benchmark
+    public ServerEvent codecDecode() throws IOException {
+        return ServerEventCodec.decodeEvent(data);
+    }
+
+    @Benchmark
+    public ServerEvent generatedDecode() throws IOException {
+        return fromProto(ServerMessagesProto.ServerEvent.parseFrom(data));
+    }
+
+    private static ServerMessagesProto.ServerEvent toProto(ServerEvent event) {
+        ServerMessagesProto.ServerEvent.Builder builder = ServerMessagesProto.ServerEvent.newBuilder()
+            .setType(ServerMessagesProto.EventType.forNumber(event.getType().ordinal()))
+            .setTimestamp(event.getTimestamp())
+            .setServerId(event.getServerId())
+            .setSequence(event.getSequence());
+
+        ServerInfo serverInfo = event.getServerInfo();
+        if (serverInfo != null) {
+            builder.setServerInfo(ServerMessagesProto.ServerInfo.newBuilder()
+                .setName(serverInfo.getName())
+                .setHost(serverInfo.getHost())
+                .setPort(serverInfo.getPort())
+                .addAllGroups(serverInfo.getGroups())
+                .setTimestamp(serverInfo.getTimestamp())
+                .setCurrentPlayers(serverInfo.getCurrentPlayers())
+                .setMaxPlayers(serverInfo.getMaxPlayers())
+                .setWeight(serverInfo.getWeight())
+                .setTps(serverInfo.getTps())
+                .setMspt(serverInfo.getMspt()));
+        }
+
+        ServerDelta delta = event.getDelta();
+        if (delta != null) {
+            ServerMessagesProto.ServerDelta.Builder deltaBuilder = ServerMessagesProto.ServerDelta.newBuilder();
+            if (delta.getCurrentPlayers() != null) deltaBuilder.setCurrentPlayers(delta.getCurrentPlayers());
+            if (delta.getMaxPlayers() != null) deltaBuilder.setMaxPlayers(delta.getMaxPlayers());
+            if (delta.getWeight() != null) deltaBuilder.setWeight(delta.getWeight());
+            if (delta.getTps() != null) deltaBuilder.setTps(delta.getTps());
+            if (delta.getMspt() != null) deltaBuilder.setMspt(delta.getMspt());
+            builder.setDelta(deltaBuilder);
+        }
+
+        return builder.build();
+    }
+
+    private static ServerEvent fromProto(ServerMessagesProto.ServerEvent proto) {
+        ServerEvent event = new ServerEvent();
+        event.setType(ServerEvent.EventType.values()[proto.getTypeValue()]);
+        event.setTimestamp(proto.getTimestamp());
+        event.setServerId(proto.getServerId());
+        event.setSequence(proto.getSequence());
+
+        if (proto.hasServerInfo()) {
+            ServerMessagesProto.ServerInfo info = proto.getServerInfo();
+            ServerInfo serverInfo = new ServerInfo(info.getName(), info.getHost(), info.getPort(), info.getGroupsList());
+            serverInfo.setTimestamp(info.getTimestamp());
+            serverInfo.setCurrentPlayers(info.getCurrentPlayers());
+            serverInfo.setMaxPlayers(info.getMaxPlayers());
+            serverInfo.setWeight(info.getWeight());
+            serverInfo.setTps(info.getTps());
+            serverInfo.setMspt(info.getMspt());
+            event.setServerInfo(serverInfo);
+        }
+
+        if (proto.hasDelta()) {
+            ServerMessagesProto.ServerDelta protoDelta = proto.getDelta();
+            ServerDelta delta = new ServerDelta();
+            if (protoDelta.hasCurrentPlayers()) delta.setCurrentPlayers(protoDelta.getCurrentPlayers());
+            if (protoDelta.hasMaxPlayers()) delta.setMaxPlayers(protoDelta.getMaxPlayers());
+            if (protoDelta.hasWeight()) delta.setWeight(protoDelta.getWeight());
+            if (protoDelta.hasTps()) delta.setTps(protoDelta.getTps());
+            if (protoDelta.hasMspt()) delta.setMspt(protoDelta.getMspt());
+            event.setDelta(delta);
+        }
+
+        return event;
+    }
+}
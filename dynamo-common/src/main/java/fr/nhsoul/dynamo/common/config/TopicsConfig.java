@@ -4,13 +4,20 @@ public class TopicsConfig {
     private String register;
     private String heartbeat;
     private String unregister;
+    private String resync;
+    private String groupPrefix = "minecraft.server";
     
     public TopicsConfig() {}
     
     public TopicsConfig(String register, String heartbeat, String unregister) {
+        this(register, heartbeat, unregister, "minecraft.resync");
+    }
+    
+    public TopicsConfig(String register, String heartbeat, String unregister, String resync) {
         this.register = register;
         this.heartbeat = heartbeat;
         this.unregister = unregister;
+        this.resync = resync;
     }
     
     // Getters et setters
@@ -22,4 +29,20 @@ public class TopicsConfig {
     
     public String getUnregister() { return unregister; }
     public void setUnregister(String unregister) { this.unregister = unregister; }
+    
+    public String getResync() { return resync; }
+    public void setResync(String resync) { this.resync = resync; }
+    
+    public String getGroupPrefix() { return groupPrefix; }
+    public void setGroupPrefix(String groupPrefix) { this.groupPrefix = groupPrefix; }
+    
+    // Sujet par groupe : <prefix>.<groupe>.<événement>, l'événement étant le dernier segment du topic classique
+    public String forGroup(String group, String topic) {
+        return groupPrefix + "." + group + "." + topic.substring(topic.lastIndexOf('.') + 1);
+    }
+    
+    // Abonnement à tous les événements d'un groupe
+    public String groupPattern(String group) {
+        return groupPrefix + "." + group + ".*";
+    }
 }
\ No newline at end of file
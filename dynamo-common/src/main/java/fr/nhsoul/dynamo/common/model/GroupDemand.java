@@ -0,0 +1,63 @@
+package fr.nhsoul.dynamo.common.model;
+
+public class GroupDemand {
+    private String proxyId;
+    private String group;
+    private int servers;
+    private int totalSlots;
+    private int freeSlots;
+    private int players;
+    private int queueDepth;
+    private double loginRate;
+    private double rejectedRate;
+    private double fallbackRate;
+    private long timestamp;
+
+    public GroupDemand() {}
+
+    public GroupDemand(String proxyId, String group) {
+        this.proxyId = proxyId;
+        this.group = group;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    // Getters et setters
+    public String getProxyId() { return proxyId; }
+    public void setProxyId(String proxyId) { this.proxyId = proxyId; }
+
+    public String getGroup() { return group; }
+    public void setGroup(String group) { this.group = group; }
+
+    public int getServers() { return servers; }
+    public void setServers(int servers) { this.servers = servers; }
+
+    public int getTotalSlots() { return totalSlots; }
+    public void setTotalSlots(int totalSlots) { this.totalSlots = totalSlots; }
+
+    public int getFreeSlots() { return freeSlots; }
+    public void setFreeSlots(int freeSlots) { this.freeSlots = freeSlots; }
+
+    public int getPlayers() { return players; }
+    public void setPlayers(int players) { this.players = players; }
+
+    public int getQueueDepth() { return queueDepth; }
+    public void setQueueDepth(int queueDepth) { this.queueDepth = queueDepth; }
+
+    public double getLoginRate() { return loginRate; }
+    public void setLoginRate(double loginRate) { this.loginRate = loginRate; }
+
+    public double getRejectedRate() { return rejectedRate; }
+    public void setRejectedRate(double rejectedRate) { this.rejectedRate = rejectedRate; }
+
+    public double getFallbackRate() { return fallbackRate; }
+    public void setFallbackRate(double fallbackRate) { this.fallbackRate = fallbackRate; }
+
+    public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+
+    @Override
+    public String toString() {
+        return String.format("GroupDemand{proxy='%s', group='%s', servers=%d, slots=%d/%d, queue=%d, logins=%.2f/s}",
+                proxyId, group, servers, freeSlots, totalSlots, queueDepth, loginRate);
+    }
+}
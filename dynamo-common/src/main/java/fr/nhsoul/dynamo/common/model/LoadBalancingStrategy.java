@@ -4,5 +4,9 @@ public enum LoadBalancingStrategy {
     ROUND_ROBIN,
     LEAST_PLAYERS,
     RANDOM,
-    FIRST_AVAILABLE
+    FIRST_AVAILABLE,
+    POWER_OF_TWO_CHOICES,
+    CONSISTENT_HASH,
+    WEIGHTED_ROUND_ROBIN,
+    TICK_HEALTH
 }
\ No newline at end of file
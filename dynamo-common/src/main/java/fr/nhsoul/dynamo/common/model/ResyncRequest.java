@@ -0,0 +1,45 @@
+package fr.nhsoul.dynamo.common.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResyncRequest {
+    private int serverId;
+    private List<String> groups = new ArrayList<>();
+
+    public ResyncRequest() {}
+
+    public ResyncRequest(int serverId, List<String> groups) {
+        this.serverId = serverId;
+        this.groups = groups;
+    }
+
+    // Getters et setters
+    // 0 : tous les serveurs, sinon le seul serveur portant cet identifiant
+    public int getServerId() { return serverId; }
+    public void setServerId(int serverId) { this.serverId = serverId; }
+
+    // Groupes servis par le proxy demandeur ; vide pour tous les groupes
+    public List<String> getGroups() { return groups; }
+    public void setGroups(List<String> groups) { this.groups = groups; }
+
+    // true si le serveur, avec ces groupes et cet identifiant, doit répondre
+    public boolean matches(int serverId, List<String> serverGroups) {
+        if (this.serverId != 0 && this.serverId != serverId) {
+            return false;
+        }
+        if (groups.isEmpty()) {
+            return true;
+        }
+        if (serverGroups == null) {
+            return false;
+        }
+
+        for (String group : serverGroups) {
+            if (groups.contains(group)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+package fr.nhsoul.dynamo.common.model;
+
+// Champs modifiés depuis le dernier message d'un serveur ; null = inchangé
+public class ServerDelta {
+    private Integer currentPlayers;
+    private Integer maxPlayers;
+    private Integer weight;
+    private Double tps;
+    private Double mspt;
+
+    public ServerDelta() {}
+
+    // Getters et setters
+    public Integer getCurrentPlayers() { return currentPlayers; }
+    public void setCurrentPlayers(Integer currentPlayers) { this.currentPlayers = currentPlayers; }
+
+    public Integer getMaxPlayers() { return maxPlayers; }
+    public void setMaxPlayers(Integer maxPlayers) { this.maxPlayers = maxPlayers; }
+
+    public Integer getWeight() { return weight; }
+    public void setWeight(Integer weight) { this.weight = weight; }
+
+    public Double getTps() { return tps; }
+    public void setTps(Double tps) { this.tps = tps; }
+
+    public Double getMspt() { return mspt; }
+    public void setMspt(Double mspt) { this.mspt = mspt; }
+
+    public void applyTo(ServerInfo serverInfo) {
+        if (currentPlayers != null) serverInfo.setCurrentPlayers(currentPlayers);
+        if (maxPlayers != null) serverInfo.setMaxPlayers(maxPlayers);
+        if (weight != null) serverInfo.setWeight(weight);
+        if (tps != null) serverInfo.setTps(tps);
+        if (mspt != null) serverInfo.setMspt(mspt);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ServerDelta{players=%s, max=%s, weight=%s, tps=%s, mspt=%s}",
+                currentPlayers, maxPlayers, weight, tps, mspt);
+    }
+}
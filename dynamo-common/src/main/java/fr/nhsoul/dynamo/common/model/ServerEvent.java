@@ -12,6 +12,9 @@ public class ServerEvent {
     private EventType type;
     private ServerInfo serverInfo;
     private long timestamp;
+    private int serverId;
+    private long sequence;
+    private ServerDelta delta;
 
     public ServerEvent() {}
 
@@ -31,9 +34,21 @@ public class ServerEvent {
     public long getTimestamp() { return timestamp; }
     public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
 
+    public int getServerId() { return serverId; }
+    public void setServerId(int serverId) { this.serverId = serverId; }
+
+    public long getSequence() { return sequence; }
+    public void setSequence(long sequence) { this.sequence = sequence; }
+
+    public ServerDelta getDelta() { return delta; }
+    public void setDelta(ServerDelta delta) { this.delta = delta; }
+
+    // Message complet (v1 ou resynchronisation) par opposition à un delta v2
+    public boolean isFull() { return serverInfo != null; }
+
     @Override
     public String toString() {
-        return String.format("ServerEvent{type=%s, server=%s, timestamp=%d}",
-                type, serverInfo != null ? serverInfo.getName() : "null", timestamp);
+        return String.format("ServerEvent{type=%s, server=%s, id=%d, seq=%d, timestamp=%d}",
+                type, serverInfo != null ? serverInfo.getName() : "null", serverId, sequence, timestamp);
     }
 }
\ No newline at end of file
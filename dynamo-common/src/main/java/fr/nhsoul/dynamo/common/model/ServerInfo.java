@@ -2,23 +2,25 @@
 package fr.nhsoul.dynamo.common.model;
 
 import java.util.List;
+import java.util.Objects;
 
 public class ServerInfo {
     private String name;
-    private String host;
-    private int port;
-    private List<String> groups;
-    private long timestamp;
-    private int currentPlayers;
-    private int maxPlayers;
+    // Adresse et groupes changent ensemble, par une seule écriture volatile : un lecteur du registre
+    // voit l'ancienne ou la nouvelle adresse complète, jamais un hôte sans son port
+    private volatile Endpoint endpoint = Endpoint.EMPTY;
+    private volatile long timestamp;
+    private volatile int currentPlayers;
+    private volatile int maxPlayers;
+    private volatile int weight;
+    private volatile double tps;
+    private volatile double mspt;
 
     public ServerInfo() {}
 
     public ServerInfo(String name, String host, int port, List<String> groups) {
         this.name = name;
-        this.host = host;
-        this.port = port;
-        this.groups = groups;
+        this.endpoint = new Endpoint(host, port, groups);
         this.timestamp = System.currentTimeMillis();
     }
 
@@ -26,14 +28,16 @@ public class ServerInfo {
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
 
-    public String getHost() { return host; }
-    public void setHost(String host) { this.host = host; }
+    public Endpoint getEndpoint() { return endpoint; }
 
-    public int getPort() { return port; }
-    public void setPort(int port) { this.port = port; }
+    public String getHost() { return endpoint.host; }
+    public void setHost(String host) { this.endpoint = new Endpoint(host, endpoint.port, endpoint.groups); }
 
-    public List<String> getGroups() { return groups; }
-    public void setGroups(List<String> groups) { this.groups = groups; }
+    public int getPort() { return endpoint.port; }
+    public void setPort(int port) { this.endpoint = new Endpoint(endpoint.host, port, endpoint.groups); }
+
+    public List<String> getGroups() { return endpoint.groups; }
+    public void setGroups(List<String> groups) { this.endpoint = new Endpoint(endpoint.host, endpoint.port, groups); }
 
     public long getTimestamp() { return timestamp; }
     public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
@@ -44,18 +48,42 @@ public class ServerInfo {
     public int getMaxPlayers() { return maxPlayers; }
     public void setMaxPlayers(int maxPlayers) { this.maxPlayers = maxPlayers; }
 
+    public int getWeight() { return weight; }
+    public void setWeight(int weight) { this.weight = weight; }
+
+    public double getTps() { return tps; }
+    public void setTps(double tps) { this.tps = tps; }
+
+    public double getMspt() { return mspt; }
+    public void setMspt(double mspt) { this.mspt = mspt; }
+
     public void updateTimestamp() {
         this.timestamp = System.currentTimeMillis();
     }
 
+    public void updateFrom(ServerInfo other) {
+        this.endpoint = other.endpoint;
+        this.timestamp = other.timestamp;
+        this.currentPlayers = other.currentPlayers;
+        this.maxPlayers = other.maxPlayers;
+        this.weight = other.weight;
+        this.tps = other.tps;
+        this.mspt = other.mspt;
+    }
+
+    public boolean isFull() {
+        return currentPlayers >= maxPlayers;
+    }
+
     public boolean isTimedOut(long timeoutMs) {
         return System.currentTimeMillis() - timestamp > timeoutMs;
     }
 
     @Override
     public String toString() {
+        Endpoint current = endpoint;
         return String.format("ServerInfo{name='%s', host='%s', port=%d, groups=%s, players=%d/%d}",
-                name, host, port, groups, currentPlayers, maxPlayers);
+                name, current.host, current.port, current.groups, currentPlayers, maxPlayers);
     }
 
     @Override
@@ -70,4 +98,38 @@ public class ServerInfo {
     public int hashCode() {
         return name != null ? name.hashCode() : 0;
     }
-}
\ No newline at end of file
+
+    // Adresse et groupes d'un serveur, immuables ; les getters de ServerInfo lisent l'instance courante
+    public static final class Endpoint {
+        private static final Endpoint EMPTY = new Endpoint(null, 0, null);
+
+        private final String host;
+        private final int port;
+        private final List<String> groups;
+
+        private Endpoint(String host, int port, List<String> groups) {
+            this.host = host;
+            this.port = port;
+            this.groups = groups;
+        }
+
+        public String getHost() { return host; }
+        public int getPort() { return port; }
+        public List<String> getGroups() { return groups; }
+
+        public String getAddress() { return host + ":" + port; }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            Endpoint that = (Endpoint) obj;
+            return port == that.port && Objects.equals(host, that.host) && Objects.equals(groups, that.groups);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, groups);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package fr.nhsoul.dynamo.common.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SlotRequest {
+    private String proxyId;
+    private int count;
+    private List<String> playerIds = new ArrayList<>();
+    private boolean release;
+
+    public SlotRequest() {}
+
+    public SlotRequest(String proxyId, List<String> playerIds, boolean release) {
+        this.proxyId = proxyId;
+        this.playerIds = playerIds;
+        this.count = playerIds.size();
+        this.release = release;
+    }
+
+    // Getters et setters
+    public String getProxyId() { return proxyId; }
+    public void setProxyId(String proxyId) { this.proxyId = proxyId; }
+
+    // Nombre de places demandées ; les anciens proxies l'envoient sans identifiants de joueurs
+    public int getCount() { return count; }
+    public void setCount(int count) { this.count = count; }
+
+    public List<String> getPlayerIds() { return playerIds; }
+    public void setPlayerIds(List<String> playerIds) { this.playerIds = playerIds; }
+
+    // true si le proxy rend les places de ces joueurs au lieu d'en demander
+    public boolean isRelease() { return release; }
+    public void setRelease(boolean release) { this.release = release; }
+}
@@ -1,96 +1,130 @@
 package fr.nhsoul.dynamo.common.util;
 
 import com.google.protobuf.InvalidProtocolBufferException;
+import fr.nhsoul.dynamo.common.model.GroupDemand;
+import fr.nhsoul.dynamo.common.model.ResyncRequest;
 import fr.nhsoul.dynamo.common.model.ServerEvent;
 import fr.nhsoul.dynamo.common.model.ServerInfo;
+import fr.nhsoul.dynamo.common.model.SlotRequest;
 import fr.nhsoul.dynamo.common.model.proto.ServerMessagesProto;
 
+import java.io.IOException;
+import java.util.ArrayList;
+
 public class ProtobufSerializer {
 
+    // Chemin chaud (heartbeats, registre) : codec direct sans objets proto intermédiaires
     public static byte[] serializeServerEvent(ServerEvent event) {
-        ServerMessagesProto.ServerEvent.Builder builder = ServerMessagesProto.ServerEvent.newBuilder()
-                .setType(convertEventType(event.getType()))
-                .setTimestamp(event.getTimestamp());
-
-        if (event.getServerInfo() != null) {
-            builder.setServerInfo(convertToProto(event.getServerInfo()));
-        }
-
-        return builder.build().toByteArray();
+        return ServerEventCodec.encodeEvent(event);
     }
 
     public static ServerEvent deserializeServerEvent(byte[] data) throws InvalidProtocolBufferException {
-        ServerMessagesProto.ServerEvent proto = ServerMessagesProto.ServerEvent.parseFrom(data);
-
-        ServerEvent event = new ServerEvent();
-        event.setType(convertEventType(proto.getType()));
-        event.setTimestamp(proto.getTimestamp());
+        try {
+            return ServerEventCodec.decodeEvent(data);
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException(e);
+        }
+    }
 
-        if (proto.hasServerInfo()) {
-            event.setServerInfo(convertFromProto(proto.getServerInfo()));
+    // Répartition des événements entre décodeurs : tous ceux d'un même serveur partagent la même clé
+    public static int peekServerKey(byte[] data) {
+        try {
+            return ServerEventCodec.peekServerKey(data);
+        } catch (IOException e) {
+            // Message illisible : le décodeur qui le recevra le signalera
+            return 0;
         }
+    }
 
-        return event;
+    // Type d'un événement sans le décoder ; null si le message est illisible ou d'un type inconnu
+    public static ServerEvent.EventType peekEventType(byte[] data) {
+        try {
+            return ServerEventCodec.peekEventType(data);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
     }
 
     public static byte[] serializeServerInfo(ServerInfo serverInfo) {
-        return convertToProto(serverInfo).toByteArray();
+        return ServerEventCodec.encodeServerInfo(serverInfo);
     }
 
     public static ServerInfo deserializeServerInfo(byte[] data) throws InvalidProtocolBufferException {
-        ServerMessagesProto.ServerInfo proto = ServerMessagesProto.ServerInfo.parseFrom(data);
-        return convertFromProto(proto);
+        try {
+            return ServerEventCodec.decodeServerInfo(data);
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException(e);
+        }
     }
 
-    private static ServerMessagesProto.ServerInfo convertToProto(ServerInfo serverInfo) {
-        ServerMessagesProto.ServerInfo.Builder builder = ServerMessagesProto.ServerInfo.newBuilder()
-                .setName(serverInfo.getName())
-                .setHost(serverInfo.getHost())
-                .setPort(serverInfo.getPort())
-                .setTimestamp(serverInfo.getTimestamp())
-                .setCurrentPlayers(serverInfo.getCurrentPlayers())
-                .setMaxPlayers(serverInfo.getMaxPlayers());
-
-        if (serverInfo.getGroups() != null) {
-            builder.addAllGroups(serverInfo.getGroups());
-        }
+    public static byte[] serializeResyncRequest(ResyncRequest request) {
+        return ServerMessagesProto.ResyncRequest.newBuilder()
+                .setServerId(request.getServerId())
+                .addAllGroups(request.getGroups())
+                .build()
+                .toByteArray();
+    }
 
-        return builder.build();
+    public static ResyncRequest deserializeResyncRequest(byte[] data) throws InvalidProtocolBufferException {
+        ServerMessagesProto.ResyncRequest proto = ServerMessagesProto.ResyncRequest.parseFrom(data);
+
+        ResyncRequest request = new ResyncRequest();
+        request.setServerId(proto.getServerId());
+        request.setGroups(new ArrayList<>(proto.getGroupsList()));
+        return request;
     }
 
-    private static ServerInfo convertFromProto(ServerMessagesProto.ServerInfo proto) {
-        ServerInfo serverInfo = new ServerInfo();
-        serverInfo.setName(proto.getName());
-        serverInfo.setHost(proto.getHost());
-        serverInfo.setPort(proto.getPort());
-        serverInfo.setTimestamp(proto.getTimestamp());
-        serverInfo.setCurrentPlayers(proto.getCurrentPlayers());
-        serverInfo.setMaxPlayers(proto.getMaxPlayers());
+    public static byte[] serializeSlotRequest(SlotRequest request) {
+        return ServerMessagesProto.SlotRequest.newBuilder()
+                .setProxyId(request.getProxyId())
+                .setCount(request.getCount())
+                .addAllPlayerIds(request.getPlayerIds())
+                .setRelease(request.isRelease())
+                .build()
+                .toByteArray();
+    }
 
-        serverInfo.setGroups(proto.getGroupsList());
+    public static SlotRequest deserializeSlotRequest(byte[] data) throws InvalidProtocolBufferException {
+        ServerMessagesProto.SlotRequest proto = ServerMessagesProto.SlotRequest.parseFrom(data);
 
-        return serverInfo;
+        SlotRequest request = new SlotRequest();
+        request.setProxyId(proto.getProxyId());
+        request.setCount(proto.getCount());
+        request.setPlayerIds(new ArrayList<>(proto.getPlayerIdsList()));
+        request.setRelease(proto.getRelease());
+        return request;
     }
 
-    private static ServerMessagesProto.EventType convertEventType(ServerEvent.EventType type) {
-        switch (type) {
-            case REGISTER: return ServerMessagesProto.EventType.REGISTER;
-            case HEARTBEAT: return ServerMessagesProto.EventType.HEARTBEAT;
-            case UNREGISTER: return ServerMessagesProto.EventType.UNREGISTER;
-            case PLAYER_JOIN: return ServerMessagesProto.EventType.PLAYER_JOIN;
-            case PLAYER_LEAVE: return ServerMessagesProto.EventType.PLAYER_LEAVE;
-            default: throw new IllegalArgumentException("Type d'événement non supporté: " + type);
-        }
+    public static byte[] serializeSlotGrant(int granted, int ttlMs) {
+        return ServerMessagesProto.SlotGrant.newBuilder()
+                .setGranted(granted)
+                .setTtlMs(ttlMs)
+                .build()
+                .toByteArray();
     }
 
-    private static ServerEvent.EventType convertEventType(ServerMessagesProto.EventType type) {
-        switch (type) {
-            case REGISTER: return ServerEvent.EventType.REGISTER;
-            case HEARTBEAT: return ServerEvent.EventType.HEARTBEAT;
-            case UNREGISTER: return ServerEvent.EventType.UNREGISTER;
-            case PLAYER_JOIN: return ServerEvent.EventType.PLAYER_JOIN;
-            case PLAYER_LEAVE: return ServerEvent.EventType.PLAYER_LEAVE;
-            default: throw new IllegalArgumentException("Type d'événement proto non supporté: " + type);
-        }
+    public static int deserializeSlotGrant(byte[] data) throws InvalidProtocolBufferException {
+        return ServerMessagesProto.SlotGrant.parseFrom(data).getGranted();
+    }
+
+    public static byte[] serializeGroupDemand(GroupDemand demand) {
+        return ServerMessagesProto.GroupDemand.newBuilder()
+                .setProxyId(demand.getProxyId())
+                .setGroup(demand.getGroup())
+                .setServers(demand.getServers())
+                .setTotalSlots(demand.getTotalSlots())
+                .setFreeSlots(demand.getFreeSlots())
+                .setPlayers(demand.getPlayers())
+                .setQueueDepth(demand.getQueueDepth())
+                .setLoginRate(demand.getLoginRate())
+                .setRejectedRate(demand.getRejectedRate())
+                .setFallbackRate(demand.getFallbackRate())
+                .setTimestamp(demand.getTimestamp())
+                .build()
+                .toByteArray();
     }
-}
\ No newline at end of file
+}
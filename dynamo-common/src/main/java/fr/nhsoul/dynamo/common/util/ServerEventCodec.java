@@ -0,0 +1,357 @@
+package fr.nhsoul.dynamo.common.util;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import fr.nhsoul.dynamo.common.model.ServerDelta;
+import fr.nhsoul.dynamo.common.model.ServerEvent;
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Codec direct des messages ServerEvent/ServerInfo, octet pour octet identique à celui généré par protoc.
+// Pas de builder ni d'objet proto intermédiaire : l'encodage calcule la taille exacte puis écrit
+// dans un seul tableau (celui remis à NATS), le décodage remplit directement les objets du modèle.
+// Noms, hôtes et listes de groupes se répètent d'un message à l'autre : les instances décodées sont
+// remplacées par une instance partagée, seule la copie temporaire du message reste à collecter.
+final class ServerEventCodec {
+    // Numéros de champs de server_messages.proto
+    private static final int EVENT_TYPE = 1;
+    private static final int EVENT_SERVER_INFO = 2;
+    private static final int EVENT_TIMESTAMP = 3;
+    private static final int EVENT_SERVER_ID = 4;
+    private static final int EVENT_SEQUENCE = 5;
+    private static final int EVENT_DELTA = 6;
+
+    private static final int INFO_NAME = 1;
+    private static final int INFO_HOST = 2;
+    private static final int INFO_PORT = 3;
+    private static final int INFO_GROUPS = 4;
+    private static final int INFO_TIMESTAMP = 5;
+    private static final int INFO_CURRENT_PLAYERS = 6;
+    private static final int INFO_MAX_PLAYERS = 7;
+    private static final int INFO_WEIGHT = 8;
+    private static final int INFO_TPS = 9;
+    private static final int INFO_MSPT = 10;
+
+    private static final int DELTA_CURRENT_PLAYERS = 1;
+    private static final int DELTA_MAX_PLAYERS = 2;
+    private static final int DELTA_WEIGHT = 3;
+    private static final int DELTA_TPS = 4;
+    private static final int DELTA_MSPT = 5;
+
+    // Même ordre que l'enum EventType du .proto : l'ordinal est le numéro sur le fil
+    private static final ServerEvent.EventType[] EVENT_TYPES = ServerEvent.EventType.values();
+
+    // Borné : au-delà, on repart de zéro plutôt que de garder des noms de serveurs disparus
+    private static final int MAX_INTERNED = 4096;
+    private static final Map<String, String> STRINGS = new ConcurrentHashMap<>();
+    private static final Map<List<String>, List<String>> GROUP_LISTS = new ConcurrentHashMap<>();
+
+    private ServerEventCodec() {}
+
+    static byte[] encodeEvent(ServerEvent event) {
+        ServerInfo serverInfo = event.getServerInfo();
+        ServerDelta delta = event.getDelta();
+        int infoSize = serverInfo != null ? serverInfoSize(serverInfo) : 0;
+        int deltaSize = delta != null ? deltaSize(delta) : 0;
+
+        int size = 0;
+        int type = event.getType().ordinal();
+        if (type != 0) size += CodedOutputStream.computeEnumSize(EVENT_TYPE, type);
+        if (serverInfo != null) size += messageSize(EVENT_SERVER_INFO, infoSize);
+        if (event.getTimestamp() != 0) size += CodedOutputStream.computeInt64Size(EVENT_TIMESTAMP, event.getTimestamp());
+        if (event.getServerId() != 0) size += CodedOutputStream.computeUInt32Size(EVENT_SERVER_ID, event.getServerId());
+        if (event.getSequence() != 0) size += CodedOutputStream.computeUInt64Size(EVENT_SEQUENCE, event.getSequence());
+        if (delta != null) size += messageSize(EVENT_DELTA, deltaSize);
+
+        byte[] data = new byte[size];
+        CodedOutputStream output = CodedOutputStream.newInstance(data);
+        try {
+            if (type != 0) output.writeEnum(EVENT_TYPE, type);
+            if (serverInfo != null) {
+                output.writeTag(EVENT_SERVER_INFO, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeUInt32NoTag(infoSize);
+                writeServerInfo(output, serverInfo);
+            }
+            if (event.getTimestamp() != 0) output.writeInt64(EVENT_TIMESTAMP, event.getTimestamp());
+            if (event.getServerId() != 0) output.writeUInt32(EVENT_SERVER_ID, event.getServerId());
+            if (event.getSequence() != 0) output.writeUInt64(EVENT_SEQUENCE, event.getSequence());
+            if (delta != null) {
+                output.writeTag(EVENT_DELTA, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeUInt32NoTag(deltaSize);
+                writeDelta(output, delta);
+            }
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            // Impossible avec un tableau dimensionné à l'avance, sauf incohérence de calcul de taille
+            throw new UncheckedIOException(e);
+        }
+        return data;
+    }
+
+    static byte[] encodeServerInfo(ServerInfo serverInfo) {
+        byte[] data = new byte[serverInfoSize(serverInfo)];
+        CodedOutputStream output = CodedOutputStream.newInstance(data);
+        try {
+            writeServerInfo(output, serverInfo);
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return data;
+    }
+
+    static ServerEvent decodeEvent(byte[] data) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(data);
+        ServerEvent event = new ServerEvent();
+        event.setType(ServerEvent.EventType.REGISTER);
+
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case EVENT_TYPE:
+                    event.setType(eventType(input.readEnum()));
+                    break;
+                case EVENT_SERVER_INFO: {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    event.setServerInfo(readServerInfo(input));
+                    input.popLimit(limit);
+                    break;
+                }
+                case EVENT_TIMESTAMP:
+                    event.setTimestamp(input.readInt64());
+                    break;
+                case EVENT_SERVER_ID:
+                    event.setServerId(input.readUInt32());
+                    break;
+                case EVENT_SEQUENCE:
+                    event.setSequence(input.readUInt64());
+                    break;
+                case EVENT_DELTA: {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    event.setDelta(readDelta(input));
+                    input.popLimit(limit);
+                    break;
+                }
+                default:
+                    input.skipField(tag);
+            }
+        }
+        return event;
+    }
+
+    // Clé stable par serveur sans décoder l'événement : identifiant compact, sinon hash des octets du nom (émetteur v1)
+    static int peekServerKey(byte[] data) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(data);
+        int nameHash = 0;
+
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case EVENT_SERVER_ID: {
+                    int serverId = input.readUInt32();
+                    if (serverId != 0) return serverId;
+                    break;
+                }
+                case EVENT_SERVER_INFO: {
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    int infoTag;
+                    while ((infoTag = input.readTag()) != 0) {
+                        if (WireFormat.getTagFieldNumber(infoTag) == INFO_NAME) {
+                            nameHash = input.readBytes().hashCode();
+                        } else {
+                            input.skipField(infoTag);
+                        }
+                    }
+                    input.popLimit(limit);
+                    break;
+                }
+                default:
+                    input.skipField(tag);
+            }
+        }
+        return nameHash;
+    }
+
+    // Type seul, sans rien décoder d'autre ; REGISTER (0) n'étant pas écrit, son absence oblige à parcourir les tags
+    static ServerEvent.EventType peekEventType(byte[] data) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(data);
+
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == EVENT_TYPE) {
+                return eventType(input.readEnum());
+            }
+            input.skipField(tag);
+        }
+        return EVENT_TYPES[0];
+    }
+
+    static ServerInfo decodeServerInfo(byte[] data) throws IOException {
+        return readServerInfo(CodedInputStream.newInstance(data));
+    }
+
+    private static int messageSize(int field, int size) {
+        return CodedOutputStream.computeTagSize(field) + CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+    }
+
+    // proto3 : une valeur scalaire par défaut (0, chaîne vide) n'est pas écrite
+    private static int serverInfoSize(ServerInfo serverInfo) {
+        int size = 0;
+        if (!isEmpty(serverInfo.getName())) size += CodedOutputStream.computeStringSize(INFO_NAME, serverInfo.getName());
+        if (!isEmpty(serverInfo.getHost())) size += CodedOutputStream.computeStringSize(INFO_HOST, serverInfo.getHost());
+        if (serverInfo.getPort() != 0) size += CodedOutputStream.computeInt32Size(INFO_PORT, serverInfo.getPort());
+        if (serverInfo.getGroups() != null) {
+            for (String group : serverInfo.getGroups()) {
+                size += CodedOutputStream.computeStringSize(INFO_GROUPS, group);
+            }
+        }
+        if (serverInfo.getTimestamp() != 0) size += CodedOutputStream.computeInt64Size(INFO_TIMESTAMP, serverInfo.getTimestamp());
+        if (serverInfo.getCurrentPlayers() != 0) size += CodedOutputStream.computeInt32Size(INFO_CURRENT_PLAYERS, serverInfo.getCurrentPlayers());
+        if (serverInfo.getMaxPlayers() != 0) size += CodedOutputStream.computeInt32Size(INFO_MAX_PLAYERS, serverInfo.getMaxPlayers());
+        if (serverInfo.getWeight() != 0) size += CodedOutputStream.computeInt32Size(INFO_WEIGHT, serverInfo.getWeight());
+        if (isSet(serverInfo.getTps())) size += CodedOutputStream.computeDoubleSize(INFO_TPS, serverInfo.getTps());
+        if (isSet(serverInfo.getMspt())) size += CodedOutputStream.computeDoubleSize(INFO_MSPT, serverInfo.getMspt());
+        return size;
+    }
+
+    private static void writeServerInfo(CodedOutputStream output, ServerInfo serverInfo) throws IOException {
+        if (!isEmpty(serverInfo.getName())) output.writeString(INFO_NAME, serverInfo.getName());
+        if (!isEmpty(serverInfo.getHost())) output.writeString(INFO_HOST, serverInfo.getHost());
+        if (serverInfo.getPort() != 0) output.writeInt32(INFO_PORT, serverInfo.getPort());
+        if (serverInfo.getGroups() != null) {
+            for (String group : serverInfo.getGroups()) {
+                output.writeString(INFO_GROUPS, group);
+            }
+        }
+        if (serverInfo.getTimestamp() != 0) output.writeInt64(INFO_TIMESTAMP, serverInfo.getTimestamp());
+        if (serverInfo.getCurrentPlayers() != 0) output.writeInt32(INFO_CURRENT_PLAYERS, serverInfo.getCurrentPlayers());
+        if (serverInfo.getMaxPlayers() != 0) output.writeInt32(INFO_MAX_PLAYERS, serverInfo.getMaxPlayers());
+        if (serverInfo.getWeight() != 0) output.writeInt32(INFO_WEIGHT, serverInfo.getWeight());
+        if (isSet(serverInfo.getTps())) output.writeDouble(INFO_TPS, serverInfo.getTps());
+        if (isSet(serverInfo.getMspt())) output.writeDouble(INFO_MSPT, serverInfo.getMspt());
+    }
+
+    // Champs lus dans des variables locales : l'adresse (Endpoint immuable) n'est construite qu'une fois
+    private static ServerInfo readServerInfo(CodedInputStream input) throws IOException {
+        // Comme le code généré : champs absents = valeurs par défaut, jamais null
+        String name = "";
+        String host = "";
+        int port = 0;
+        List<String> groups = null;
+        long timestamp = 0;
+        int currentPlayers = 0;
+        int maxPlayers = 0;
+        int weight = 0;
+        double tps = 0;
+        double mspt = 0;
+
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case INFO_NAME: name = intern(input.readStringRequireUtf8()); break;
+                case INFO_HOST: host = intern(input.readStringRequireUtf8()); break;
+                case INFO_PORT: port = input.readInt32(); break;
+                case INFO_GROUPS:
+                    if (groups == null) groups = new ArrayList<>(4);
+                    groups.add(intern(input.readStringRequireUtf8()));
+                    break;
+                case INFO_TIMESTAMP: timestamp = input.readInt64(); break;
+                case INFO_CURRENT_PLAYERS: currentPlayers = input.readInt32(); break;
+                case INFO_MAX_PLAYERS: maxPlayers = input.readInt32(); break;
+                case INFO_WEIGHT: weight = input.readInt32(); break;
+                case INFO_TPS: tps = input.readDouble(); break;
+                case INFO_MSPT: mspt = input.readDouble(); break;
+                default: input.skipField(tag);
+            }
+        }
+
+        ServerInfo serverInfo = new ServerInfo(name, host, port, groups != null ? internGroups(groups) : Collections.emptyList());
+        serverInfo.setTimestamp(timestamp);
+        serverInfo.setCurrentPlayers(currentPlayers);
+        serverInfo.setMaxPlayers(maxPlayers);
+        serverInfo.setWeight(weight);
+        serverInfo.setTps(tps);
+        serverInfo.setMspt(mspt);
+        return serverInfo;
+    }
+
+    private static int deltaSize(ServerDelta delta) {
+        int size = 0;
+        if (delta.getCurrentPlayers() != null) size += CodedOutputStream.computeInt32Size(DELTA_CURRENT_PLAYERS, delta.getCurrentPlayers());
+        if (delta.getMaxPlayers() != null) size += CodedOutputStream.computeInt32Size(DELTA_MAX_PLAYERS, delta.getMaxPlayers());
+        if (delta.getWeight() != null) size += CodedOutputStream.computeInt32Size(DELTA_WEIGHT, delta.getWeight());
+        if (delta.getTps() != null) size += CodedOutputStream.computeDoubleSize(DELTA_TPS, delta.getTps());
+        if (delta.getMspt() != null) size += CodedOutputStream.computeDoubleSize(DELTA_MSPT, delta.getMspt());
+        return size;
+    }
+
+    // Champs optional : présents dès qu'ils sont renseignés, même à zéro
+    private static void writeDelta(CodedOutputStream output, ServerDelta delta) throws IOException {
+        if (delta.getCurrentPlayers() != null) output.writeInt32(DELTA_CURRENT_PLAYERS, delta.getCurrentPlayers());
+        if (delta.getMaxPlayers() != null) output.writeInt32(DELTA_MAX_PLAYERS, delta.getMaxPlayers());
+        if (delta.getWeight() != null) output.writeInt32(DELTA_WEIGHT, delta.getWeight());
+        if (delta.getTps() != null) output.writeDouble(DELTA_TPS, delta.getTps());
+        if (delta.getMspt() != null) output.writeDouble(DELTA_MSPT, delta.getMspt());
+    }
+
+    private static ServerDelta readDelta(CodedInputStream input) throws IOException {
+        ServerDelta delta = new ServerDelta();
+
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case DELTA_CURRENT_PLAYERS: delta.setCurrentPlayers(input.readInt32()); break;
+                case DELTA_MAX_PLAYERS: delta.setMaxPlayers(input.readInt32()); break;
+                case DELTA_WEIGHT: delta.setWeight(input.readInt32()); break;
+                case DELTA_TPS: delta.setTps(input.readDouble()); break;
+                case DELTA_MSPT: delta.setMspt(input.readDouble()); break;
+                default: input.skipField(tag);
+            }
+        }
+        return delta;
+    }
+
+    private static ServerEvent.EventType eventType(int number) {
+        if (number < 0 || number >= EVENT_TYPES.length) {
+            throw new IllegalArgumentException("Type d'événement proto non supporté: " + number);
+        }
+        return EVENT_TYPES[number];
+    }
+
+    private static String intern(String value) {
+        String interned = STRINGS.get(value);
+        if (interned != null) return interned;
+
+        if (STRINGS.size() >= MAX_INTERNED) STRINGS.clear();
+        interned = STRINGS.putIfAbsent(value, value);
+        return interned != null ? interned : value;
+    }
+
+    // Tous les serveurs d'un même groupe partagent la même liste immuable
+    private static List<String> internGroups(List<String> groups) {
+        List<String> interned = GROUP_LISTS.get(groups);
+        if (interned != null) return interned;
+
+        if (GROUP_LISTS.size() >= MAX_INTERNED) GROUP_LISTS.clear();
+        List<String> shared = Collections.unmodifiableList(groups);
+        interned = GROUP_LISTS.putIfAbsent(shared, shared);
+        return interned != null ? interned : shared;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    // proto3 n'écrit pas 0.0 (mais écrit -0.0)
+    private static boolean isSet(double value) {
+        return Double.doubleToRawLongBits(value) != 0;
+    }
+}
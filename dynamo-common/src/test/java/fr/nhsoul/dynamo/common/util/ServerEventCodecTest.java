@@ -0,0 +1,249 @@
+package fr.nhsoul.dynamo.common.util;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnknownFieldSet;
+import fr.nhsoul.dynamo.common.model.ServerDelta;
+import fr.nhsoul.dynamo.common.model.ServerEvent;
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+import fr.nhsoul.dynamo.common.model.proto.ServerMessagesProto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Le codec écrit le format filaire à la main : il doit rester octet pour octet celui du code généré
+// depuis server_messages.proto, dans les deux sens.
+class ServerEventCodecTest {
+    private static final int EVENTS = 20_000;
+
+    @Test
+    void encodesRandomEventsLikeGeneratedCode() {
+        Random random = new Random(42);
+        for (int i = 0; i < EVENTS; i++) {
+            ServerEvent event = randomEvent(random);
+            assertArrayEquals(toProto(event).toByteArray(), ServerEventCodec.encodeEvent(event), () -> describe(event));
+        }
+    }
+
+    @Test
+    void decodesRandomEventsLikeGeneratedCode() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < EVENTS; i++) {
+            ServerMessagesProto.ServerEvent expected = toProto(randomEvent(random));
+            ServerEvent decoded = ServerEventCodec.decodeEvent(expected.toByteArray());
+
+            // Présence comprise : un champ optionnel du delta lu par le codec doit l'être aussi par le code généré
+            assertEquals(expected, toProto(decoded));
+            assertArrayEquals(expected.toByteArray(), ServerEventCodec.encodeEvent(decoded));
+        }
+    }
+
+    @Test
+    void skipsUnknownFields() throws Exception {
+        Random random = new Random(3);
+        for (int i = 0; i < 1_000; i++) {
+            ServerEvent event = randomEvent(random);
+            ServerMessagesProto.ServerEvent expected = toProto(event);
+
+            // Champs ajoutés par une version plus récente du protocole, à chaque niveau et de chaque type filaire.
+            // ServerInfo repart d'un builder neuf : le mergeFrom généré (toBuilder) ne recopie pas un double à -0.0
+            ServerMessagesProto.ServerEvent.Builder builder = expected.toBuilder().setUnknownFields(unknownFields(random));
+            if (expected.hasServerInfo()) {
+                builder.setServerInfo(serverInfoBuilder(event.getServerInfo()).setUnknownFields(unknownFields(random)));
+            }
+            if (expected.hasDelta()) {
+                builder.setDelta(expected.getDelta().toBuilder().setUnknownFields(unknownFields(random)));
+            }
+
+            ServerEvent decoded = ServerEventCodec.decodeEvent(builder.build().toByteArray());
+            assertEquals(expected, toProto(decoded));
+        }
+    }
+
+    @Test
+    void keepsOptionalDeltaFieldsSetToZero() throws Exception {
+        ServerDelta delta = new ServerDelta();
+        delta.setCurrentPlayers(0);
+        delta.setMaxPlayers(0);
+        delta.setWeight(0);
+        delta.setTps(0.0);
+        delta.setMspt(0.0);
+
+        ServerEvent event = new ServerEvent();
+        event.setType(ServerEvent.EventType.HEARTBEAT);
+        event.setServerId(12);
+        event.setSequence(34);
+        event.setDelta(delta);
+
+        byte[] data = ServerEventCodec.encodeEvent(event);
+        assertArrayEquals(toProto(event).toByteArray(), data);
+
+        ServerDelta decoded = ServerEventCodec.decodeEvent(data).getDelta();
+        assertEquals(0, decoded.getCurrentPlayers());
+        assertEquals(0, decoded.getMaxPlayers());
+        assertEquals(0, decoded.getWeight());
+        assertEquals(0.0, decoded.getTps());
+        assertEquals(0.0, decoded.getMspt());
+    }
+
+    @Test
+    void leavesAbsentDeltaFieldsUnset() throws Exception {
+        ServerEvent event = new ServerEvent();
+        event.setType(ServerEvent.EventType.HEARTBEAT);
+        event.setServerId(12);
+        event.setDelta(new ServerDelta());
+
+        ServerDelta decoded = ServerEventCodec.decodeEvent(ServerEventCodec.encodeEvent(event)).getDelta();
+        assertNull(decoded.getCurrentPlayers());
+        assertNull(decoded.getMaxPlayers());
+        assertNull(decoded.getWeight());
+        assertNull(decoded.getTps());
+        assertNull(decoded.getMspt());
+    }
+
+    @Test
+    void peeksEventTypeOfGeneratedMessages() throws Exception {
+        Random random = new Random(5);
+        for (int i = 0; i < 1_000; i++) {
+            ServerEvent event = randomEvent(random);
+            assertEquals(event.getType(), ServerEventCodec.peekEventType(toProto(event).toByteArray()), () -> describe(event));
+        }
+    }
+
+    @Test
+    void serverInfoRoundTrips() throws Exception {
+        Random random = new Random(11);
+        for (int i = 0; i < 1_000; i++) {
+            ServerMessagesProto.ServerInfo expected = toProto(randomServerInfo(random));
+            ServerInfo decoded = ServerEventCodec.decodeServerInfo(expected.toByteArray());
+
+            assertEquals(expected, toProto(decoded));
+            assertArrayEquals(expected.toByteArray(), ServerEventCodec.encodeServerInfo(decoded));
+        }
+    }
+
+    private static ServerEvent randomEvent(Random random) {
+        ServerEvent event = new ServerEvent();
+        event.setType(ServerEvent.EventType.values()[random.nextInt(ServerEvent.EventType.values().length)]);
+        event.setTimestamp(random.nextInt(3) == 0 ? 0 : random.nextLong());
+        event.setServerId(random.nextInt(3) == 0 ? 0 : random.nextInt());
+        event.setSequence(random.nextInt(3) == 0 ? 0 : random.nextLong());
+
+        if (random.nextBoolean()) {
+            event.setServerInfo(randomServerInfo(random));
+        }
+
+        if (random.nextBoolean()) {
+            ServerDelta delta = new ServerDelta();
+            if (random.nextBoolean()) delta.setCurrentPlayers(randomInt(random));
+            if (random.nextBoolean()) delta.setMaxPlayers(randomInt(random));
+            if (random.nextBoolean()) delta.setWeight(randomInt(random));
+            if (random.nextBoolean()) delta.setTps(randomDouble(random));
+            if (random.nextBoolean()) delta.setMspt(randomDouble(random));
+            event.setDelta(delta);
+        }
+
+        return event;
+    }
+
+    private static ServerInfo randomServerInfo(Random random) {
+        List<String> groups = switch (random.nextInt(3)) {
+            case 0 -> List.of();
+            case 1 -> List.of("lobby");
+            default -> List.of("survie-" + random.nextInt(5), "été", "");
+        };
+
+        ServerInfo serverInfo = new ServerInfo(random.nextInt(5) == 0 ? "" : "serveur-" + random.nextInt(100),
+            random.nextBoolean() ? "" : "10.0.0." + random.nextInt(256), randomInt(random), groups);
+        serverInfo.setTimestamp(random.nextInt(3) == 0 ? 0 : random.nextLong());
+        serverInfo.setCurrentPlayers(randomInt(random));
+        serverInfo.setMaxPlayers(randomInt(random));
+        serverInfo.setWeight(randomInt(random));
+        serverInfo.setTps(randomDouble(random));
+        serverInfo.setMspt(randomDouble(random));
+        return serverInfo;
+    }
+
+    // Zéro, négatifs (varint sur dix octets) et grandes valeurs : les cas où un encodage manuel diverge
+    private static int randomInt(Random random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> 0;
+            case 1 -> -1 - random.nextInt(1000);
+            case 2 -> random.nextInt();
+            default -> random.nextInt(200);
+        };
+    }
+
+    // -0.0 est écrit par le code généré (bits non nuls), NaN aussi
+    private static double randomDouble(Random random) {
+        return switch (random.nextInt(5)) {
+            case 0 -> 0.0;
+            case 1 -> -0.0;
+            case 2 -> Double.NaN;
+            default -> random.nextDouble() * 50;
+        };
+    }
+
+    private static UnknownFieldSet unknownFields(Random random) {
+        return UnknownFieldSet.newBuilder()
+            .addField(90, UnknownFieldSet.Field.newBuilder().addVarint(random.nextLong()).build())
+            .addField(91, UnknownFieldSet.Field.newBuilder().addFixed64(random.nextLong()).build())
+            .addField(92, UnknownFieldSet.Field.newBuilder().addFixed32(random.nextInt()).build())
+            .addField(93, UnknownFieldSet.Field.newBuilder()
+                .addLengthDelimited(ByteString.copyFromUtf8("inconnu-" + random.nextInt())).build())
+            .build();
+    }
+
+    // Ancien chemin par les builders générés, référence du format filaire
+    private static ServerMessagesProto.ServerEvent toProto(ServerEvent event) {
+        ServerMessagesProto.ServerEvent.Builder builder = ServerMessagesProto.ServerEvent.newBuilder()
+            .setType(ServerMessagesProto.EventType.forNumber(event.getType().ordinal()))
+            .setTimestamp(event.getTimestamp())
+            .setServerId(event.getServerId())
+            .setSequence(event.getSequence());
+
+        if (event.getServerInfo() != null) {
+            builder.setServerInfo(toProto(event.getServerInfo()));
+        }
+
+        ServerDelta delta = event.getDelta();
+        if (delta != null) {
+            ServerMessagesProto.ServerDelta.Builder deltaBuilder = ServerMessagesProto.ServerDelta.newBuilder();
+            if (delta.getCurrentPlayers() != null) deltaBuilder.setCurrentPlayers(delta.getCurrentPlayers());
+            if (delta.getMaxPlayers() != null) deltaBuilder.setMaxPlayers(delta.getMaxPlayers());
+            if (delta.getWeight() != null) deltaBuilder.setWeight(delta.getWeight());
+            if (delta.getTps() != null) deltaBuilder.setTps(delta.getTps());
+            if (delta.getMspt() != null) deltaBuilder.setMspt(delta.getMspt());
+            builder.setDelta(deltaBuilder);
+        }
+
+        return builder.build();
+    }
+
+    private static ServerMessagesProto.ServerInfo toProto(ServerInfo serverInfo) {
+        return serverInfoBuilder(serverInfo).build();
+    }
+
+    private static ServerMessagesProto.ServerInfo.Builder serverInfoBuilder(ServerInfo serverInfo) {
+        return ServerMessagesProto.ServerInfo.newBuilder()
+            .setName(serverInfo.getName())
+            .setHost(serverInfo.getHost())
+            .setPort(serverInfo.getPort())
+            .addAllGroups(serverInfo.getGroups())
+            .setTimestamp(serverInfo.getTimestamp())
+            .setCurrentPlayers(serverInfo.getCurrentPlayers())
+            .setMaxPlayers(serverInfo.getMaxPlayers())
+            .setWeight(serverInfo.getWeight())
+            .setTps(serverInfo.getTps())
+            .setMspt(serverInfo.getMspt());
+    }
+
+    private static String describe(ServerEvent event) {
+        return event.getType() + " id=" + event.getServerId() + " seq=" + event.getSequence()
+            + " info=" + (event.getServerInfo() != null) + " delta=" + (event.getDelta() != null);
+    }
+}
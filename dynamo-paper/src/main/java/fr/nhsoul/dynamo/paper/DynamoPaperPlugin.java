@@ -3,6 +3,7 @@ package fr.nhsoul.dynamo.paper;
 import fr.nhsoul.dynamo.paper.config.PaperConfigManager;
 import fr.nhsoul.dynamo.paper.service.NatsService;
 import fr.nhsoul.dynamo.paper.service.ServerRegistrationService;
+import fr.nhsoul.dynamo.paper.service.SlotGrantService;
 import org.bukkit.plugin.java.JavaPlugin;
 
 public class DynamoPaperPlugin extends JavaPlugin {
@@ -10,6 +11,7 @@ public class DynamoPaperPlugin extends JavaPlugin {
     private PaperConfigManager configManager;
     private NatsService natsService;
     private ServerRegistrationService registrationService;
+    private SlotGrantService slotGrantService;
     
     @Override
     public void onEnable() {
@@ -24,8 +26,12 @@ public class DynamoPaperPlugin extends JavaPlugin {
         // Initialiser le service d'enregistrement
         registrationService = new ServerRegistrationService(this, natsService, configManager);
         
+        // Initialiser l'attribution de places aux proxies
+        slotGrantService = new SlotGrantService(this, natsService, configManager, registrationService);
+        
         // Démarrer les services
         if (natsService.start()) {
+            slotGrantService.start();
             registrationService.start();
             getLogger().info("Plugin Dynamo Paper activé avec succès !");
         } else {
@@ -43,6 +49,10 @@ public class DynamoPaperPlugin extends JavaPlugin {
             registrationService.stop();
         }
         
+        if (slotGrantService != null) {
+            slotGrantService.stop();
+        }
+        
         if (natsService != null) {
             natsService.stop();
         }
@@ -61,5 +71,9 @@ public class DynamoPaperPlugin extends JavaPlugin {
     public ServerRegistrationService getRegistrationService() {
         return registrationService;
     }
+    
+    public SlotGrantService getSlotGrantService() {
+        return slotGrantService;
+    }
 }
 
@@ -29,11 +29,19 @@ public class PaperConfigManager {
     }
     
     public TopicsConfig getTopicsConfig() {
-        return new TopicsConfig(
+        TopicsConfig topics = new TopicsConfig(
             config.getString("topics.register", "minecraft.server.register"),
             config.getString("topics.heartbeat", "minecraft.server.heartbeat"),
-            config.getString("topics.unregister", "minecraft.server.unregister")
+            config.getString("topics.unregister", "minecraft.server.unregister"),
+            config.getString("topics.resync", "minecraft.resync")
         );
+        topics.setGroupPrefix(config.getString("topics.group-prefix", "minecraft.server"));
+        return topics;
+    }
+    
+    // "flat" : topics classiques ; "group" : un sujet par groupe du serveur ; "both" : les deux, pour la migration
+    public String getSubjectMode() {
+        return config.getString("topics.subjects", "flat");
     }
     
     public String getServerName() {
@@ -64,6 +72,46 @@ public class PaperConfigManager {
         return config.getInt("server.heartbeat-interval", 10);
     }
     
+    public int getFullSyncInterval() {
+        return config.getInt("server.full-sync-interval", 30);
+    }
+    
+    public int getPlayerUpdateWindow() {
+        return config.getInt("server.player-update-window", 250);
+    }
+    
+    public boolean isKeyValueRegistry() {
+        return "kv".equalsIgnoreCase(config.getString("registry.mode", "pubsub"));
+    }
+    
+    public String getRegistryBucket() {
+        return config.getString("registry.bucket", "dynamo-servers");
+    }
+    
+    public int getRegistryTtl() {
+        return config.getInt("registry.ttl", 30);
+    }
+    
+    public int getRegistryHistory() {
+        return config.getInt("registry.history", 5);
+    }
+    
+    public boolean isReservationEnabled() {
+        return config.getBoolean("reservation.enabled", true);
+    }
+    
+    public int getReservationTtl() {
+        return config.getInt("reservation.ttl", 5000);
+    }
+    
+    public String getReservationTopic() {
+        return config.getString("topics.reserve", "minecraft.reserve");
+    }
+    
+    public int getServerWeight() {
+        return config.getInt("server.weight", 0);
+    }
+    
     public void reloadConfig() {
         plugin.reloadConfig();
     }
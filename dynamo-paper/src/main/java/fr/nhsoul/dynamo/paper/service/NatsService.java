@@ -5,9 +5,16 @@ import fr.nhsoul.dynamo.common.model.ServerEvent;
 import fr.nhsoul.dynamo.common.util.ProtobufSerializer;
 import fr.nhsoul.dynamo.paper.config.PaperConfigManager;
 import io.nats.client.*;
+import io.nats.client.api.KeyValueConfiguration;
+import io.nats.client.api.StorageType;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 public class NatsService {
@@ -15,6 +22,13 @@ public class NatsService {
     private final Logger logger;
     private Connection natsConnection;
     private volatile boolean running = false;
+    
+    // Pendant une coupure, seul le dernier message de chaque sorte est gardé, au lieu d'empiler des états périmés
+    // dans le tampon de reconnexion du client. Enregistrement et désenregistrement repartent en premier.
+    private final Object outboxLock = new Object();
+    private PendingEvent pendingLifecycle;
+    private final Map<List<String>, PendingEvent> pendingStates = new LinkedHashMap<>();
+    private int replacedEvents;
 
     public NatsService(PaperConfigManager configManager, Logger logger) {
         this.configManager = configManager;
@@ -60,13 +74,30 @@ public class NatsService {
     }
 
     public CompletableFuture<Void> publishEvent(String subject, ServerEvent event) {
+        return publishEvent(List.of(subject), event);
+    }
+
+    // Même événement sur plusieurs sujets, sérialisé une seule fois
+    public CompletableFuture<Void> publishEvent(List<String> subjects, ServerEvent event) {
         if (!running || natsConnection == null) {
             return CompletableFuture.failedFuture(new IllegalStateException("Service NATS non démarré"));
         }
 
         try {
             byte[] data = ProtobufSerializer.serializeServerEvent(event);
-            natsConnection.publish(subject, data);
+            if (!isConnected()) {
+                keepLatest(subjects, event.getType(), data);
+
+                // La reconnexion a pu avoir lieu entre le test et la mise en attente
+                if (isConnected()) {
+                    flushOutbox();
+                }
+                return CompletableFuture.completedFuture(null);
+            }
+
+            for (String subject : subjects) {
+                natsConnection.publish(subject, data);
+            }
             return CompletableFuture.completedFuture(null);
         } catch (Exception e) {
             logger.warning("Erreur lors de l'envoi de l'événement: " + e.getMessage());
@@ -74,6 +105,102 @@ public class NatsService {
         }
     }
 
+    private void keepLatest(List<String> subjects, ServerEvent.EventType type, byte[] data) {
+        PendingEvent pending = new PendingEvent(subjects, data);
+
+        synchronized (outboxLock) {
+            if (type == ServerEvent.EventType.REGISTER || type == ServerEvent.EventType.UNREGISTER) {
+                if (pendingLifecycle != null) replacedEvents++;
+                pendingLifecycle = pending;
+
+                // Un serveur qui se désenregistre n'a plus d'état à annoncer
+                if (type == ServerEvent.EventType.UNREGISTER) {
+                    replacedEvents += pendingStates.size();
+                    pendingStates.clear();
+                }
+            } else if (pendingStates.put(subjects, pending) != null) {
+                replacedEvents++;
+            }
+        }
+    }
+
+    private void flushOutbox() {
+        List<PendingEvent> toSend = new ArrayList<>();
+        int replaced;
+
+        synchronized (outboxLock) {
+            if (pendingLifecycle != null) {
+                toSend.add(pendingLifecycle);
+            }
+            toSend.addAll(pendingStates.values());
+            replaced = replacedEvents;
+
+            pendingLifecycle = null;
+            pendingStates.clear();
+            replacedEvents = 0;
+        }
+
+        if (toSend.isEmpty()) return;
+
+        try {
+            for (PendingEvent pending : toSend) {
+                for (String subject : pending.subjects) {
+                    natsConnection.publish(subject, pending.data);
+                }
+            }
+            logger.info("Événements en attente envoyés après reconnexion: " + toSend.size()
+                    + " (" + replaced + " états périmés écartés)");
+        } catch (Exception e) {
+            logger.warning("Erreur lors de l'envoi des événements en attente: " + e.getMessage());
+        }
+    }
+
+    public void publish(String subject, byte[] data) {
+        if (!running || natsConnection == null) {
+            throw new IllegalStateException("Service NATS non démarré");
+        }
+
+        natsConnection.publish(subject, data);
+    }
+
+    public Dispatcher subscribe(String subject, Consumer<Message> handler) {
+        if (!running || natsConnection == null) {
+            throw new IllegalStateException("Service NATS non démarré");
+        }
+
+        return natsConnection.createDispatcher(message -> {
+            try {
+                handler.accept(message);
+            } catch (Exception e) {
+                logger.warning("Erreur lors du traitement du message NATS: " + e.getMessage());
+            }
+        }).subscribe(subject);
+    }
+
+    // Ouvre le bucket KV du registre, en le créant au premier usage
+    public KeyValue openKeyValue(String bucket, Duration ttl, int history) throws Exception {
+        if (!running || natsConnection == null) {
+            throw new IllegalStateException("Service NATS non démarré");
+        }
+
+        KeyValueManagement management = natsConnection.keyValueManagement();
+        if (!management.getBucketNames().contains(bucket)) {
+            try {
+                management.create(KeyValueConfiguration.builder()
+                        .name(bucket)
+                        .ttl(ttl)
+                        .maxHistoryPerKey(Math.max(1, history))
+                        .storageType(StorageType.File)
+                        .build());
+            } catch (JetStreamApiException e) {
+                // Créé entre-temps par un autre serveur ou proxy : on l'utilise tel quel
+                if (!management.getBucketNames().contains(bucket)) throw e;
+            }
+        }
+
+        return natsConnection.keyValue(bucket);
+    }
+
     public boolean isConnected() {
         return natsConnection != null && natsConnection.getStatus() == Connection.Status.CONNECTED;
     }
@@ -88,6 +215,7 @@ public class NatsService {
                 break;
             case RECONNECTED:
                 logger.info("Reconnecté à NATS");
+                flushOutbox();
                 break;
             case CLOSED:
                 logger.info("Connexion NATS fermée");
@@ -95,6 +223,16 @@ public class NatsService {
         }
     }
     
+    private static class PendingEvent {
+        private final List<String> subjects;
+        private final byte[] data;
+
+        private PendingEvent(List<String> subjects, byte[] data) {
+            this.subjects = subjects;
+            this.data = data;
+        }
+    }
+    
     /*private void handleErrorEvent(Connection conn, ErrorListener.ErrorEvent errorEvent) {
         logger.warning("Erreur NATS: " + errorEvent.getError().getMessage());
     }*/
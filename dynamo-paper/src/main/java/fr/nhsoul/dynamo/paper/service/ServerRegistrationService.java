@@ -1,26 +1,69 @@
 package fr.nhsoul.dynamo.paper.service;
 
+import fr.nhsoul.dynamo.common.config.TopicsConfig;
+import fr.nhsoul.dynamo.common.model.ServerDelta;
+import fr.nhsoul.dynamo.common.model.ResyncRequest;
 import fr.nhsoul.dynamo.common.model.ServerEvent;
 import fr.nhsoul.dynamo.common.model.ServerInfo;
+import fr.nhsoul.dynamo.common.util.ProtobufSerializer;
 import fr.nhsoul.dynamo.paper.config.PaperConfigManager;
+import io.nats.client.Dispatcher;
+import io.nats.client.KeyValue;
 import org.bukkit.Bukkit;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ServerRegistrationService implements Listener {
+    // En deçà de ces écarts, TPS et MSPT ne sont pas renvoyés dans les deltas
+    private static final double TPS_EPSILON = 0.1;
+    private static final double MSPT_EPSILON = 0.5;
+    
     private final JavaPlugin plugin;
     private final NatsService natsService;
     private final PaperConfigManager configManager;
     private final AtomicBoolean running = new AtomicBoolean(false);
     
+    // Tenu à jour par les événements joueurs : le thread principal ne fait qu'un incrément,
+    // la publication est regroupée et faite en asynchrone au plus une fois par fenêtre
+    private final AtomicInteger onlinePlayers = new AtomicInteger();
+    private final AtomicBoolean playerUpdatePending = new AtomicBoolean(false);
+    
     private ServerInfo serverInfo;
     private BukkitTask heartbeatTask;
+    private Dispatcher resyncDispatcher;
+    
+    // Topic classique → sujets effectifs (par groupe) ; vide en mode "flat"
+    private Map<String, List<String>> subjectsByTopic = Collections.emptyMap();
+    
+    // Mode registre KV : écritures ordonnées hors du thread principal, l'acquittement JetStream étant bloquant
+    private KeyValue keyValue;
+    private ExecutorService keyValueWriter;
+    
+    // Identifiant compact tiré à chaque démarrage : un proxy distingue ainsi un redémarrage d'un message rejoué
+    private final int serverId = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+    
+    // Protégés par le moniteur du service : heartbeats asynchrones et événements joueurs partagent la séquence
+    private long sequence;
+    private int heartbeatsSinceFull;
+    private final ServerInfo lastSent = new ServerInfo();
     
     public ServerRegistrationService(JavaPlugin plugin, NatsService natsService, PaperConfigManager configManager) {
         this.plugin = plugin;
@@ -34,6 +77,7 @@ public class ServerRegistrationService implements Listener {
             configManager.getServerPort(),
             configManager.getServerGroups()
         );
+        this.serverInfo.setWeight(configManager.getServerWeight());
         
         // Enregistrer les événements
         Bukkit.getPluginManager().registerEvents(this, plugin);
@@ -41,9 +85,22 @@ public class ServerRegistrationService implements Listener {
     
     public void start() {
         if (running.compareAndSet(false, true)) {
+            onlinePlayers.set(Bukkit.getOnlinePlayers().size());
+            
+            if (configManager.isKeyValueRegistry()) {
+                openKeyValueRegistry();
+            }
+            
+            subjectsByTopic = buildGroupSubjects();
+            
             // Enregistrer le serveur au démarrage
             registerServer();
             
+            // Répondre aux proxies qui ont perdu le fil des deltas (inutile en mode KV, l'état complet est dans le bucket)
+            if (keyValue == null) {
+                subscribeToResyncRequests();
+            }
+            
             // Démarrer le heartbeat
             startHeartbeat();
             
@@ -58,33 +115,178 @@ public class ServerRegistrationService implements Listener {
                 heartbeatTask.cancel();
             }
             
+            if (resyncDispatcher != null) {
+                resyncDispatcher.unsubscribe(configManager.getTopicsConfig().getResync());
+            }
+            
             // Désenregistrer le serveur
             unregisterServer();
             
+            if (keyValueWriter != null) {
+                // Laisser partir la suppression de l'entrée avant la fermeture de la connexion
+                keyValueWriter.shutdown();
+                try {
+                    keyValueWriter.awaitTermination(2, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            
             plugin.getLogger().info("Service d'enregistrement du serveur arrêté.");
         }
     }
     
+    private void openKeyValueRegistry() {
+        try {
+            keyValue = natsService.openKeyValue(configManager.getRegistryBucket(),
+                    Duration.ofSeconds(configManager.getRegistryTtl()), configManager.getRegistryHistory());
+            keyValueWriter = Executors.newSingleThreadExecutor();
+            plugin.getLogger().info("Registre KV utilisé: " + configManager.getRegistryBucket());
+        } catch (Exception e) {
+            plugin.getLogger().severe("Bucket KV indisponible, retour aux heartbeats classiques: " + e.getMessage());
+            keyValue = null;
+        }
+    }
+    
+    private Map<String, List<String>> buildGroupSubjects() {
+        String mode = configManager.getSubjectMode();
+        List<String> groups = serverInfo.getGroups();
+        
+        // Un serveur sans groupe n'est routé par aucun proxy "group" : il reste sur les topics classiques
+        if ("flat".equalsIgnoreCase(mode) || groups == null || groups.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        
+        TopicsConfig topics = configManager.getTopicsConfig();
+        Map<String, List<String>> subjects = new HashMap<>();
+        
+        for (String topic : List.of(topics.getRegister(), topics.getHeartbeat(), topics.getUnregister())) {
+            List<String> targets = new ArrayList<>();
+            if ("both".equalsIgnoreCase(mode)) {
+                targets.add(topic);
+            }
+            for (String group : groups) {
+                targets.add(topics.forGroup(group, topic));
+            }
+            subjects.put(topic, List.copyOf(targets));
+        }
+        
+        plugin.getLogger().info("Publication par groupe: " + subjects.get(topics.getHeartbeat()));
+        return subjects;
+    }
+    
     private void registerServer() {
-        updateServerInfo();
-        ServerEvent event = new ServerEvent(ServerEvent.EventType.REGISTER, serverInfo);
-        natsService.publishEvent(configManager.getTopicsConfig().getRegister(), event);
+        publish(ServerEvent.EventType.REGISTER, configManager.getTopicsConfig().getRegister(), true);
         plugin.getLogger().info("Serveur enregistré: " + serverInfo.getName());
     }
     
     private void unregisterServer() {
-        updateServerInfo();
-        ServerEvent event = new ServerEvent(ServerEvent.EventType.UNREGISTER, serverInfo);
-        natsService.publishEvent(configManager.getTopicsConfig().getUnregister(), event);
+        publish(ServerEvent.EventType.UNREGISTER, configManager.getTopicsConfig().getUnregister(), true);
         plugin.getLogger().info("Serveur désenregistré: " + serverInfo.getName());
     }
     
     private void sendHeartbeat() {
         if (!running.get()) return;
         
+        publish(ServerEvent.EventType.HEARTBEAT, configManager.getTopicsConfig().getHeartbeat(), false);
+    }
+    
+    private void subscribeToResyncRequests() {
+        String subject = configManager.getTopicsConfig().getResync();
+        
+        resyncDispatcher = natsService.subscribe(subject, message -> {
+            try {
+                // Un proxy qui ne sert que certains groupes n'attend pas les serveurs des autres
+                ResyncRequest request = ProtobufSerializer.deserializeResyncRequest(message.getData());
+                if (!running.get() || !request.matches(serverId, serverInfo.getGroups())) return;
+                
+                // Requête d'un proxy qui démarre : répondre à lui seul, sinon republier pour tous
+                String replyTo = message.getReplyTo();
+                publish(ServerEvent.EventType.HEARTBEAT,
+                        replyTo != null ? replyTo : configManager.getTopicsConfig().getHeartbeat(), true);
+            } catch (Exception e) {
+                plugin.getLogger().warning("Demande de resynchronisation invalide: " + e.getMessage());
+            }
+        });
+    }
+    
+    private synchronized void publish(ServerEvent.EventType type, String subject, boolean forceFull) {
         updateServerInfo();
-        ServerEvent event = new ServerEvent(ServerEvent.EventType.HEARTBEAT, serverInfo);
-        natsService.publishEvent(configManager.getTopicsConfig().getHeartbeat(), event);
+        
+        // Complet à l'enregistrement, sur demande d'un proxy, et périodiquement pour borner toute divergence ;
+        // toujours complet en mode KV, chaque révision devant se suffire à elle-même, et pendant une coupure NATS,
+        // seul le dernier message en attente étant envoyé à la reconnexion
+        boolean full = forceFull || keyValue != null || !natsService.isConnected()
+                || ++heartbeatsSinceFull >= configManager.getFullSyncInterval();
+        
+        ServerEvent event = new ServerEvent();
+        event.setType(type);
+        event.setTimestamp(serverInfo.getTimestamp());
+        event.setServerId(serverId);
+        event.setSequence(++sequence);
+        
+        if (full) {
+            event.setServerInfo(serverInfo);
+            lastSent.updateFrom(serverInfo);
+            heartbeatsSinceFull = 0;
+        } else {
+            event.setDelta(computeDelta());
+        }
+        
+        // Les réponses de resynchronisation (sujet de réponse) ne sont pas redirigées vers les groupes
+        List<String> subjects = subjectsByTopic.get(subject);
+        if (keyValue != null) {
+            writeToKeyValue(event);
+        } else if (subjects != null) {
+            natsService.publishEvent(subjects, event);
+        } else {
+            natsService.publishEvent(subject, event);
+        }
+    }
+    
+    private void writeToKeyValue(ServerEvent event) {
+        String key = serverInfo.getName();
+        boolean delete = event.getType() == ServerEvent.EventType.UNREGISTER;
+        byte[] data = delete ? null : ProtobufSerializer.serializeServerEvent(event);
+        
+        keyValueWriter.execute(() -> {
+            try {
+                if (delete) {
+                    keyValue.delete(key);
+                } else {
+                    keyValue.put(key, data);
+                }
+            } catch (Exception e) {
+                plugin.getLogger().warning("Erreur lors de l'écriture dans le registre KV: " + e.getMessage());
+            }
+        });
+    }
+    
+    private ServerDelta computeDelta() {
+        ServerDelta delta = new ServerDelta();
+        
+        if (serverInfo.getCurrentPlayers() != lastSent.getCurrentPlayers()) {
+            delta.setCurrentPlayers(serverInfo.getCurrentPlayers());
+            lastSent.setCurrentPlayers(serverInfo.getCurrentPlayers());
+        }
+        if (serverInfo.getMaxPlayers() != lastSent.getMaxPlayers()) {
+            delta.setMaxPlayers(serverInfo.getMaxPlayers());
+            lastSent.setMaxPlayers(serverInfo.getMaxPlayers());
+        }
+        if (serverInfo.getWeight() != lastSent.getWeight()) {
+            delta.setWeight(serverInfo.getWeight());
+            lastSent.setWeight(serverInfo.getWeight());
+        }
+        if (Math.abs(serverInfo.getTps() - lastSent.getTps()) >= TPS_EPSILON) {
+            delta.setTps(serverInfo.getTps());
+            lastSent.setTps(serverInfo.getTps());
+        }
+        if (Math.abs(serverInfo.getMspt() - lastSent.getMspt()) >= MSPT_EPSILON) {
+            delta.setMspt(serverInfo.getMspt());
+            lastSent.setMspt(serverInfo.getMspt());
+        }
+        
+        return delta;
     }
     
     private void startHeartbeat() {
@@ -97,30 +299,49 @@ public class ServerRegistrationService implements Listener {
     }
     
     private void updateServerInfo() {
-        serverInfo.setCurrentPlayers(Bukkit.getOnlinePlayers().size());
+        serverInfo.setCurrentPlayers(onlinePlayers.get());
         serverInfo.setMaxPlayers(Bukkit.getMaxPlayers());
+        // Valeurs déjà moyennées par Paper : simple lecture, sans coût pour le tick
+        serverInfo.setTps(Bukkit.getTPS()[0]);
+        serverInfo.setMspt(Bukkit.getAverageTickTime());
         serverInfo.updateTimestamp();
     }
     
-    @EventHandler
+    @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerJoin(PlayerJoinEvent event) {
-        if (running.get()) {
-            updateServerInfo();
-            ServerEvent serverEvent = new ServerEvent(ServerEvent.EventType.PLAYER_JOIN, serverInfo);
-            natsService.publishEvent(configManager.getTopicsConfig().getHeartbeat(), serverEvent);
-        }
+        onlinePlayers.incrementAndGet();
+        schedulePlayerUpdate();
     }
     
-    @EventHandler
+    @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerQuit(PlayerQuitEvent event) {
-        if (running.get()) {
-            // Attendre un tick pour que le joueur soit effectivement déconnecté
-            Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                updateServerInfo();
-                ServerEvent serverEvent = new ServerEvent(ServerEvent.EventType.PLAYER_LEAVE, serverInfo);
-                natsService.publishEvent(configManager.getTopicsConfig().getHeartbeat(), serverEvent);
-            }, 1L);
-        }
+        // Le joueur est encore dans la liste pendant l'événement : le compteur, lui, est déjà juste
+        onlinePlayers.decrementAndGet();
+        schedulePlayerUpdate();
+    }
+    
+    private void schedulePlayerUpdate() {
+        if (!running.get() || !playerUpdatePending.compareAndSet(false, true)) return;
+        
+        // Une seule tâche asynchrone par fenêtre, quel que soit le nombre d'arrivées et de départs
+        long delayTicks = Math.max(1, configManager.getPlayerUpdateWindow() / 50);
+        Bukkit.getScheduler().runTaskLaterAsynchronously(plugin, this::publishPlayerUpdate, delayTicks);
+    }
+    
+    private synchronized void publishPlayerUpdate() {
+        playerUpdatePending.set(false);
+        if (!running.get()) return;
+        
+        int previous = serverInfo.getCurrentPlayers();
+        int current = onlinePlayers.get();
+        if (current == previous) return;
+        
+        publish(current > previous ? ServerEvent.EventType.PLAYER_JOIN : ServerEvent.EventType.PLAYER_LEAVE,
+                configManager.getTopicsConfig().getHeartbeat(), false);
+    }
+    
+    public int getOnlinePlayers() {
+        return onlinePlayers.get();
     }
     
     public ServerInfo getServerInfo() {
@@ -0,0 +1,154 @@
+package fr.nhsoul.dynamo.paper.service;
+
+import fr.nhsoul.dynamo.common.model.SlotRequest;
+import fr.nhsoul.dynamo.common.util.ProtobufSerializer;
+import fr.nhsoul.dynamo.paper.config.PaperConfigManager;
+import io.nats.client.Dispatcher;
+import io.nats.client.Message;
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Répond aux demandes de places des proxies contre la capacité réelle du serveur.
+// Chaque place accordée est un jeton de courte durée lié au joueur attendu : consommé à son arrivée, rendu par le proxy
+// ou expiré après le TTL, il compte comme un joueur déjà présent pour les demandes suivantes, quel que soit le proxy.
+public class SlotGrantService implements Listener {
+    private final JavaPlugin plugin;
+    private final NatsService natsService;
+    private final PaperConfigManager configManager;
+    private final ServerRegistrationService registrationService;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // Échéances des jetons en cours par joueur attendu, dans l'ordre d'attribution ; protégées par le moniteur du service
+    private final Map<String, Long> tokens = new LinkedHashMap<>();
+    // Jetons anonymes des proxies qui n'envoient pas d'identifiants : ils ne font qu'expirer
+    private final ArrayDeque<Long> anonymousTokens = new ArrayDeque<>();
+    private Dispatcher dispatcher;
+    private String subject;
+
+    public SlotGrantService(JavaPlugin plugin, NatsService natsService, PaperConfigManager configManager,
+                            ServerRegistrationService registrationService) {
+        this.plugin = plugin;
+        this.natsService = natsService;
+        this.configManager = configManager;
+        this.registrationService = registrationService;
+
+        // Enregistrer les événements
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+    }
+
+    public void start() {
+        if (!configManager.isReservationEnabled()) {
+            return;
+        }
+
+        if (running.compareAndSet(false, true)) {
+            subject = configManager.getReservationTopic() + "." + configManager.getServerName();
+            dispatcher = natsService.subscribe(subject, this::onSlotRequest);
+
+            plugin.getLogger().info("Réservation de places ouverte sur " + subject);
+        }
+    }
+
+    public void stop() {
+        if (running.compareAndSet(true, false)) {
+            if (dispatcher != null) {
+                dispatcher.unsubscribe(subject);
+            }
+
+            synchronized (this) {
+                tokens.clear();
+                anonymousTokens.clear();
+            }
+        }
+    }
+
+    private void onSlotRequest(Message message) {
+        if (!running.get()) return;
+
+        try {
+            SlotRequest request = ProtobufSerializer.deserializeSlotRequest(message.getData());
+
+            if (request.isRelease()) {
+                release(request);
+                return;
+            }
+            if (message.getReplyTo() == null) return;
+
+            int ttlMs = configManager.getReservationTtl();
+
+            natsService.publish(message.getReplyTo(), ProtobufSerializer.serializeSlotGrant(grant(request, ttlMs), ttlMs));
+        } catch (Exception e) {
+            plugin.getLogger().warning("Demande de réservation invalide: " + e.getMessage());
+        }
+    }
+
+    private synchronized int grant(SlotRequest request, int ttlMs) {
+        long now = System.currentTimeMillis();
+        purgeExpired(now);
+
+        int free = Bukkit.getMaxPlayers() - registrationService.getOnlinePlayers() - tokens.size() - anonymousTokens.size();
+
+        if (request.getPlayerIds().isEmpty()) {
+            int granted = Math.max(0, Math.min(request.getCount(), free));
+            for (int i = 0; i < granted; i++) {
+                anonymousTokens.addLast(now + ttlMs);
+            }
+            return granted;
+        }
+
+        // Les places sont accordées dans l'ordre de la demande : le proxy accorde les N premiers joueurs
+        int granted = 0;
+        for (String playerId : request.getPlayerIds()) {
+            // Un joueur qui a déjà un jeton (nouvel essai du proxy) ne prend pas de place supplémentaire
+            boolean held = tokens.remove(playerId) != null;
+            if (!held && free <= 0) {
+                break;
+            }
+            if (!held) {
+                free--;
+            }
+            tokens.put(playerId, now + ttlMs);
+            granted++;
+        }
+
+        return granted;
+    }
+
+    private synchronized void release(SlotRequest request) {
+        for (String playerId : request.getPlayerIds()) {
+            tokens.remove(playerId);
+        }
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<Long> it = tokens.values().iterator();
+        while (it.hasNext() && it.next() <= now) {
+            it.remove();
+        }
+
+        Long expiry;
+        while ((expiry = anonymousTokens.peekFirst()) != null && expiry <= now) {
+            anonymousTokens.pollFirst();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        if (!running.get()) return;
+
+        // Le joueur arrivé occupe désormais une vraie place : libérer son propre jeton, pas celui d'un autre
+        synchronized (this) {
+            tokens.remove(event.getPlayer().getUniqueId().toString());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+// Sélection ROUND_ROBIN et LEAST_PLAYERS dans un groupe : index par groupe contre l'ancien parcours complet du registre
+// (copie de la map, filtres en stream, min). Un serveur sur dix est plein, la moitié hors du groupe visé.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GroupSelectionBenchmark {
+    private static final String GROUP = "lobby";
+    private static final long TIMEOUT_MS = 30_000L;
+
+    @Param({"100", "1000", "10000"})
+    public int servers;
+
+    private final GroupIndex groupIndex = new GroupIndex();
+    private final Map<String, ServerInfo> registry = new ConcurrentHashMap<>();
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < servers; i++) {
+            List<String> groups = i % 2 == 0 ? List.of(GROUP, "hub") : List.of("survival");
+            ServerInfo serverInfo = new ServerInfo("server-" + i, "10.0.0." + (i % 250), 25565, groups);
+            serverInfo.setMaxPlayers(100);
+            serverInfo.setCurrentPlayers(i % 10 == 0 ? 100 : i % 97);
+            serverInfo.setTimestamp(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+
+            registry.put(serverInfo.getName(), serverInfo);
+            groupIndex.update(serverInfo);
+        }
+    }
+
+    @Benchmark
+    public ServerInfo indexedRoundRobin() {
+        List<ServerInfo> available = groupIndex.getServers(GROUP);
+        return available.get(Math.floorMod(counter.getAndIncrement(), available.size()));
+    }
+
+    @Benchmark
+    public ServerInfo registryScanRoundRobin() {
+        List<ServerInfo> available = scanAvailable();
+        return available.get(Math.floorMod(counter.getAndIncrement(), available.size()));
+    }
+
+    @Benchmark
+    public ServerInfo indexedLeastPlayers() {
+        List<ServerInfo> available = groupIndex.getServers(GROUP);
+
+        ServerInfo best = null;
+        double bestRatio = Double.MAX_VALUE;
+        for (int i = 0; i < available.size(); i++) {
+            ServerInfo serverInfo = available.get(i);
+            double ratio = playerRatio(serverInfo);
+            if (ratio < bestRatio) {
+                best = serverInfo;
+                bestRatio = ratio;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public Optional<ServerInfo> registryScanLeastPlayers() {
+        return scanAvailable().stream().min(Comparator.comparingDouble(GroupSelectionBenchmark::playerRatio));
+    }
+
+    // Chemin d'avant l'index : copie du registre puis filtrage de tous les serveurs à chaque sélection
+    private List<ServerInfo> scanAvailable() {
+        Map<String, ServerInfo> copy = new ConcurrentHashMap<>(registry);
+        return copy.values().stream()
+            .filter(serverInfo -> serverInfo.getGroups().contains(GROUP))
+            .filter(serverInfo -> !serverInfo.isTimedOut(TIMEOUT_MS) && serverInfo.getCurrentPlayers() < serverInfo.getMaxPlayers())
+            .collect(Collectors.toList());
+    }
+
+    private static double playerRatio(ServerInfo serverInfo) {
+        return serverInfo.getMaxPlayers() == 0 ? 0.0 : (double) serverInfo.getCurrentPlayers() / serverInfo.getMaxPlayers();
+    }
+}
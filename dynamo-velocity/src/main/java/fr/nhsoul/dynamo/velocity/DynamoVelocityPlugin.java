@@ -8,9 +8,13 @@ import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
 import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager;
+import fr.nhsoul.dynamo.velocity.service.AdmissionQueueService;
+import fr.nhsoul.dynamo.velocity.service.GroupDemandPublisher;
 import fr.nhsoul.dynamo.velocity.service.NatsService;
 import fr.nhsoul.dynamo.velocity.service.ServerDiscoveryService;
 import fr.nhsoul.dynamo.velocity.service.LoadBalancingService;
+import fr.nhsoul.dynamo.velocity.service.RebalancingService;
+import fr.nhsoul.dynamo.velocity.service.SlotReservationService;
 import org.slf4j.Logger;
 
 import java.nio.file.Path;
@@ -37,6 +41,10 @@ public class DynamoVelocityPlugin {
     private NatsService natsService;
     private ServerDiscoveryService discoveryService;
     private LoadBalancingService loadBalancingService;
+    private RebalancingService rebalancingService;
+    private AdmissionQueueService admissionQueueService;
+    private GroupDemandPublisher groupDemandPublisher;
+    private SlotReservationService slotReservationService;
     private VelocityEventRegistrar eventRegistrar;
     
     @Subscribe
@@ -55,21 +63,46 @@ public class DynamoVelocityPlugin {
         // Initialiser le service de load balancing
         loadBalancingService = new LoadBalancingService(discoveryService, configManager, logger);
         
+        // Initialiser la file d'attente des groupes saturés
+        admissionQueueService = new AdmissionQueueService(discoveryService, loadBalancingService, configManager, logger);
+        
+        // Initialiser la réservation de places auprès des serveurs
+        slotReservationService = new SlotReservationService(natsService, configManager, logger);
+        
+        // Initialiser le service de rééquilibrage
+        rebalancingService = new RebalancingService(server, discoveryService, loadBalancingService, slotReservationService,
+                configManager, logger);
+        
+        // Initialiser la publication de la demande par groupe
+        groupDemandPublisher = new GroupDemandPublisher(natsService, discoveryService, loadBalancingService,
+                admissionQueueService, configManager, logger);
+        
         // Initialiser le registrar d'événements
         eventRegistrar = new VelocityEventRegistrar(this, server, logger);
         
         // Démarrer les services
-        if (natsService.start()) {
-            discoveryService.start();
-            loadBalancingService.start();
-            
-            // Enregistrer les événements et commandes
-            eventRegistrar.registerEvents();
-            eventRegistrar.registerCommands();
-            
+        boolean natsConnected = natsService.start();
+        if (!natsConnected && !configManager.isSnapshotEnabled()) {
+            logger.error("Impossible de se connecter à NATS. Le plugin ne fonctionnera pas correctement.");
+            return;
+        }
+        
+        // Sans NATS, la découverte repart de la copie locale du registre et le routage reste possible ;
+        // abonnements et publications reprennent d'eux-mêmes à la première connexion
+        discoveryService.start();
+        loadBalancingService.start();
+        rebalancingService.start();
+        groupDemandPublisher.start();
+        slotReservationService.start();
+        
+        // Enregistrer les événements et commandes
+        eventRegistrar.registerEvents();
+        eventRegistrar.registerCommands();
+        
+        if (natsConnected) {
             logger.info("Plugin Dynamo Velocity initialisé avec succès !");
         } else {
-            logger.error("Impossible de se connecter à NATS. Le plugin ne fonctionnera pas correctement.");
+            logger.error("Impossible de se connecter à NATS. Routage depuis la copie locale du registre en attendant la connexion.");
         }
     }
     
@@ -78,6 +111,18 @@ public class DynamoVelocityPlugin {
         logger.info("Arrêt du plugin Dynamo Velocity...");
         
         // Arrêter les services dans l'ordre inverse
+        if (slotReservationService != null) {
+            slotReservationService.stop();
+        }
+        
+        if (groupDemandPublisher != null) {
+            groupDemandPublisher.stop();
+        }
+        
+        if (rebalancingService != null) {
+            rebalancingService.stop();
+        }
+        
         if (loadBalancingService != null) {
             loadBalancingService.stop();
         }
@@ -108,6 +153,22 @@ public class DynamoVelocityPlugin {
     public LoadBalancingService getLoadBalancingService() {
         return loadBalancingService;
     }
+    
+    public RebalancingService getRebalancingService() {
+        return rebalancingService;
+    }
+    
+    public AdmissionQueueService getAdmissionQueueService() {
+        return admissionQueueService;
+    }
+
+    public GroupDemandPublisher getGroupDemandPublisher() {
+        return groupDemandPublisher;
+    }
+
+    public SlotReservationService getSlotReservationService() {
+        return slotReservationService;
+    }
 
     public ProxyServer getProxy() {
         return this.server;
@@ -25,6 +25,7 @@ public class VelocityEventRegistrar {
         // Enregistrer les handlers d'événements
         eventManager.register(plugin, new PlayerConnectionHandler(plugin, logger));
         eventManager.register(plugin, new ServerPingHandler(plugin));
+        eventManager.register(plugin, plugin.getRebalancingService());
         
         logger.info("Handlers d'événements enregistrés.");
     }
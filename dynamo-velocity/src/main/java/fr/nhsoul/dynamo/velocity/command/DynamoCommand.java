@@ -3,7 +3,11 @@ package fr.nhsoul.dynamo.velocity.command;
 import com.velocitypowered.api.command.SimpleCommand;
 import fr.nhsoul.dynamo.common.model.ServerInfo;
 import fr.nhsoul.dynamo.velocity.DynamoVelocityPlugin;
+import fr.nhsoul.dynamo.velocity.service.AdmissionQueueService;
+import fr.nhsoul.dynamo.velocity.service.DiscoveryApplier;
+import fr.nhsoul.dynamo.velocity.service.DiscoveryIngest;
 import fr.nhsoul.dynamo.velocity.service.LoadBalancingService;
+import fr.nhsoul.dynamo.velocity.service.PhiAccrualFailureDetector;
 import fr.nhsoul.dynamo.velocity.service.ServerDiscoveryService;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
@@ -70,7 +74,7 @@ public class DynamoCommand implements SimpleCommand {
                 .append(Component.text("  • ", NamedTextColor.GRAY))
                 .append(Component.text(serverInfo.getName(), NamedTextColor.AQUA))
                 .append(Component.text(" (", NamedTextColor.GRAY))
-                .append(Component.text(serverInfo.getHost() + ":" + serverInfo.getPort(), NamedTextColor.WHITE))
+                .append(Component.text(serverInfo.getEndpoint().getAddress(), NamedTextColor.WHITE))
                 .append(Component.text(") - ", NamedTextColor.GRAY))
                 .append(Component.text(serverInfo.getCurrentPlayers() + "/" + serverInfo.getMaxPlayers(), NamedTextColor.YELLOW))
                 .append(Component.text(" joueurs", NamedTextColor.GRAY))
@@ -123,6 +127,9 @@ public class DynamoCommand implements SimpleCommand {
     private void handleStatusCommand(Invocation invocation) {
         boolean natsConnected = plugin.getNatsService().isConnected();
         int totalServers = plugin.getDiscoveryService().getDiscoveredServers().size();
+        int unverifiedServers = plugin.getDiscoveryService().getUnverifiedServers().size();
+        DiscoveryApplier applier = plugin.getDiscoveryService().getApplier();
+        DiscoveryIngest ingest = plugin.getDiscoveryService().getIngest();
         
         Component statusComponent = Component.text()
             .append(Component.text("Statut Dynamo:", NamedTextColor.GREEN))
@@ -133,9 +140,62 @@ public class DynamoCommand implements SimpleCommand {
             .append(Component.newline())
             .append(Component.text("  Serveurs: ", NamedTextColor.GRAY))
             .append(Component.text(totalServers + " découverts", NamedTextColor.YELLOW))
+            .append(Component.text(unverifiedServers > 0 ? " (" + unverifiedServers + " non vérifiés)" : "", NamedTextColor.GOLD))
+            .append(Component.newline())
+            .append(Component.text("  Messages de découverte: ", NamedTextColor.GRAY))
+            .append(Component.text(applier.getReceived() + " reçus, " + applier.getCoalesced() + " regroupés, "
+                    + plugin.getDiscoveryService().getDuplicates() + " doublons, "
+                    + applier.getBacklog() + " en file", NamedTextColor.WHITE))
+            .append(Component.newline())
+            .append(Component.text("  Ingestion: ", NamedTextColor.GRAY))
+            .append(Component.text(ingest.getBacklog() + " à décoder, " + ingest.getDropped()
+                    + " abandonnés, décodage " + ingest.getDecodeTime().format(), NamedTextColor.WHITE))
+            .append(Component.newline())
+            .append(Component.text("  Retard d'application: ", NamedTextColor.GRAY))
+            .append(Component.text(applier.getLag().formatMillis(), NamedTextColor.WHITE))
+            .append(Component.newline())
+            .append(Component.text("  Choix du serveur initial: ", NamedTextColor.GRAY))
+            .append(Component.text(plugin.getLoadBalancingService().getInitialServerLatency().format(), NamedTextColor.WHITE))
+            .append(Component.newline())
+            .append(Component.text("  Affinité: ", NamedTextColor.GRAY))
+            .append(Component.text(plugin.getLoadBalancingService().getAffinity().format(), NamedTextColor.WHITE))
+            .append(Component.newline())
+            .append(Component.text("  Réservations: ", NamedTextColor.GRAY))
+            .append(Component.text(plugin.getSlotReservationService().format(), NamedTextColor.WHITE))
+            .append(Component.newline())
+            .append(Component.text("  File d'attente: ", NamedTextColor.GRAY))
+            .append(Component.text(plugin.getAdmissionQueueService().getWaiting() + " joueurs", NamedTextColor.YELLOW))
             .build();
         
         invocation.source().sendMessage(statusComponent);
+        
+        AdmissionQueueService admissionQueue = plugin.getAdmissionQueueService();
+        for (String groupName : admissionQueue.getQueuedGroups()) {
+            int size = admissionQueue.getQueueSize(groupName);
+            if (size == 0) continue;
+            
+            long estimate = admissionQueue.estimateWaitSeconds(groupName, size);
+            invocation.source().sendMessage(Component.text()
+                .append(Component.text("    - ", NamedTextColor.DARK_GRAY))
+                .append(Component.text(groupName, NamedTextColor.GOLD))
+                .append(Component.text(": " + size + " en attente", NamedTextColor.WHITE))
+                .append(Component.text(estimate >= 0 ? " (~" + estimate + "s)" : "", NamedTextColor.GRAY))
+                .build());
+        }
+        
+        PhiAccrualFailureDetector failureDetector = plugin.getDiscoveryService().getFailureDetector();
+        long now = System.currentTimeMillis();
+        invocation.source().sendMessage(Component.text("  Suspicion (phi, seuil " + failureDetector.getThreshold() + "):", NamedTextColor.GRAY));
+        for (ServerInfo serverInfo : plugin.getDiscoveryService().getDiscoveredServers().values()) {
+            double phi = failureDetector.getPhi(serverInfo.getName(), now);
+            boolean suspect = phi >= failureDetector.getThreshold();
+            invocation.source().sendMessage(Component.text()
+                .append(Component.text("    - ", NamedTextColor.DARK_GRAY))
+                .append(Component.text(serverInfo.getName(), NamedTextColor.AQUA))
+                .append(Component.text(String.format(": phi %.2f", phi), suspect ? NamedTextColor.RED : NamedTextColor.WHITE))
+                .append(Component.text(suspect ? " (suspect)" : "", NamedTextColor.RED))
+                .build());
+        }
     }
     
     private void handleReloadCommand(Invocation invocation) {
@@ -10,13 +10,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class VelocityConfigManager {
     private final Path dataDirectory;
     private final Logger logger;
     private Map<String, Object> config;
+    private Map<String, GroupConfig> groupsConfig;
+    private Map<String, List<FallbackTarget>> fallbackChains;
+    private List<FallbackTarget> defaultFallbackChain;
     
     public VelocityConfigManager(Path dataDirectory, Logger logger) {
         this.dataDirectory = dataDirectory;
@@ -58,6 +67,10 @@ public class VelocityConfigManager {
             logger.error("Erreur lors du chargement de la configuration", e);
             config = new HashMap<>();
         }
+        
+        // Les groupes sont lus à chaque sélection de serveur : les analyser une seule fois par chargement
+        groupsConfig = parseGroupsConfig();
+        compileFallbackChains();
     }
     
     @SuppressWarnings("unchecked")
@@ -86,11 +99,25 @@ public class VelocityConfigManager {
     }
     
     public TopicsConfig getTopicsConfig() {
-        return new TopicsConfig(
+        TopicsConfig topics = new TopicsConfig(
             getConfigValue("topics.register", "minecraft.server.register"),
             getConfigValue("topics.heartbeat", "minecraft.server.heartbeat"),
-            getConfigValue("topics.unregister", "minecraft.server.unregister")
+            getConfigValue("topics.unregister", "minecraft.server.unregister"),
+            getConfigValue("topics.resync", "minecraft.resync")
         );
+        topics.setGroupPrefix(getConfigValue("topics.group-prefix", "minecraft.server"));
+        return topics;
+    }
+    
+    public boolean isGroupSubjects() {
+        return "group".equalsIgnoreCase(getConfigValue("topics.subjects", "flat"));
+    }
+    
+    // Groupes vers lesquels ce proxy route : ceux de la configuration et le groupe par défaut
+    public Set<String> getServedGroups() {
+        Set<String> groups = new LinkedHashSet<>(groupsConfig.keySet());
+        groups.add(getDefaultGroup());
+        return groups;
     }
     
     public String getTopicsPattern() {
@@ -101,11 +128,31 @@ public class VelocityConfigManager {
         return getConfigValue("proxy.server-timeout", 30);
     }
     
-    public int getCleanupInterval() {
-        return getConfigValue("proxy.cleanup-interval", 15);
+    public double getPhiThreshold() {
+        return ((Number) getConfigValue("proxy.phi-threshold", 8)).doubleValue();
+    }
+    
+    public int getPhiMinStdDev() {
+        return getConfigValue("proxy.phi-min-std-dev", 200);
+    }
+    
+    public int getBootstrapTimeout() {
+        return getConfigValue("proxy.bootstrap-timeout", 500);
+    }
+    
+    public int getBootstrapQuietPeriod() {
+        return getConfigValue("proxy.bootstrap-quiet-period", 100);
+    }
+    
+    public int getExpiryTick() {
+        return getConfigValue("proxy.expiry-tick", 100);
     }
     
     public Map<String, GroupConfig> getGroupsConfig() {
+        return groupsConfig;
+    }
+    
+    private Map<String, GroupConfig> parseGroupsConfig() {
         Map<String, GroupConfig> groups = new HashMap<>();
         Map<String, Object> groupsData = getConfigValue("groups", new HashMap<>());
         
@@ -125,7 +172,55 @@ public class VelocityConfigManager {
             }
         }
         
-        return groups;
+        return Collections.unmodifiableMap(groups);
+    }
+    
+    // Chaîne de secours d'un groupe : ses autres serveurs, son fallback-server explicite,
+    // puis les groupes configurés par priorité croissante et enfin le groupe par défaut
+    public List<FallbackTarget> getFallbackChain(String groupName) {
+        return fallbackChains.getOrDefault(groupName, defaultFallbackChain);
+    }
+    
+    public List<FallbackTarget> getDefaultFallbackChain() {
+        return defaultFallbackChain;
+    }
+    
+    private void compileFallbackChains() {
+        List<String> groupsByPriority = new ArrayList<>(groupsConfig.keySet());
+        groupsByPriority.sort(Comparator.comparingInt((String group) -> groupsConfig.get(group).getPriority())
+                .thenComparing(Comparator.naturalOrder()));
+        
+        String defaultGroup = getDefaultGroup();
+        if (!groupsByPriority.contains(defaultGroup)) {
+            groupsByPriority.add(defaultGroup);
+        }
+        
+        Map<String, List<FallbackTarget>> chains = new HashMap<>();
+        for (Map.Entry<String, GroupConfig> entry : groupsConfig.entrySet()) {
+            List<FallbackTarget> chain = new ArrayList<>();
+            chain.add(FallbackTarget.group(entry.getKey()));
+            
+            String fallbackServer = entry.getValue().getFallbackServer();
+            if (fallbackServer != null && !fallbackServer.isEmpty()) {
+                chain.add(FallbackTarget.server(fallbackServer));
+            }
+            
+            for (String group : groupsByPriority) {
+                if (!group.equals(entry.getKey())) {
+                    chain.add(FallbackTarget.group(group));
+                }
+            }
+            
+            chains.put(entry.getKey(), Collections.unmodifiableList(chain));
+        }
+        
+        List<FallbackTarget> defaultChain = new ArrayList<>();
+        for (String group : groupsByPriority) {
+            defaultChain.add(FallbackTarget.group(group));
+        }
+        
+        fallbackChains = Collections.unmodifiableMap(chains);
+        defaultFallbackChain = Collections.unmodifiableList(defaultChain);
     }
     
     public String getDefaultGroup() {
@@ -140,6 +235,142 @@ public class VelocityConfigManager {
         return getConfigValue("load-balancing.migration-threshold", 90);
     }
     
+    public int getMigrationHysteresis() {
+        return getConfigValue("load-balancing.migration-hysteresis", 10);
+    }
+    
+    public int getMigrationMovesPerSecond() {
+        return getConfigValue("load-balancing.migration-moves-per-second", 5);
+    }
+    
+    public int getMigrationInterval() {
+        return getConfigValue("load-balancing.migration-interval", 30);
+    }
+    
+    public int getMigrationIdleTime() {
+        return getConfigValue("load-balancing.migration-idle-time", 60);
+    }
+    
+    public int getPendingConnectionTimeout() {
+        return getConfigValue("load-balancing.pending-connection-timeout", 5);
+    }
+    
+    public int getHashLoadOverflow() {
+        return getConfigValue("load-balancing.hash-load-overflow", 25);
+    }
+    
+    public int getMsptBudget() {
+        return getConfigValue("load-balancing.mspt-budget", 50);
+    }
+    
+    public int getMsptSmoothing() {
+        return getConfigValue("load-balancing.mspt-smoothing", 10);
+    }
+    
+    public int getAffinityTtl() {
+        return getConfigValue("load-balancing.affinity-ttl", 5);
+    }
+    
+    public int getAffinityMaxSize() {
+        return getConfigValue("load-balancing.affinity-max-size", 10000);
+    }
+    
+    public boolean isAdmissionQueueEnabled() {
+        return getConfigValue("admission-queue.enabled", true);
+    }
+    
+    public int getAdmissionQueueMaxWait() {
+        return getConfigValue("admission-queue.max-wait", 20);
+    }
+    
+    public Map<String, Integer> getAdmissionQueuePriorities() {
+        return getConfigValue("admission-queue.priorities", new HashMap<>());
+    }
+    
+    public boolean isKeyValueRegistry() {
+        return "kv".equalsIgnoreCase(getConfigValue("registry.mode", "pubsub"));
+    }
+    
+    public String getRegistryBucket() {
+        return getConfigValue("registry.bucket", "dynamo-servers");
+    }
+    
+    public int getRegistryTtl() {
+        return getConfigValue("registry.ttl", 30);
+    }
+    
+    public int getRegistryHistory() {
+        return getConfigValue("registry.history", 5);
+    }
+    
+    public int getIngestCapacity() {
+        return getConfigValue("ingest.queue-capacity", 8192);
+    }
+    
+    public int getIngestDecodeThreads() {
+        return getConfigValue("ingest.decode-threads", 1);
+    }
+    
+    public int getIngestMaxBlock() {
+        return getConfigValue("ingest.max-block", 50);
+    }
+    
+    public boolean isReservationEnabled() {
+        return getConfigValue("reservation.enabled", true);
+    }
+    
+    public String getReservationTopic() {
+        return getConfigValue("topics.reserve", "minecraft.reserve");
+    }
+    
+    public int getReservationBatchWindow() {
+        return getConfigValue("reservation.batch-window", 5);
+    }
+    
+    public int getReservationTimeout() {
+        return getConfigValue("reservation.timeout", 250);
+    }
+    
+    public int getReservationRetries() {
+        return getConfigValue("reservation.retries", 1);
+    }
+    
+    public boolean isSnapshotEnabled() {
+        return getConfigValue("snapshot.enabled", true);
+    }
+    
+    public Path getSnapshotFile() {
+        return dataDirectory.resolve(getConfigValue("snapshot.file", "registry.bin"));
+    }
+    
+    public int getSnapshotInterval() {
+        return getConfigValue("snapshot.interval", 10);
+    }
+    
+    public int getSnapshotMaxAge() {
+        return getConfigValue("snapshot.max-age", 600);
+    }
+    
+    public int getSnapshotProbeInterval() {
+        return getConfigValue("snapshot.probe-interval", 5);
+    }
+    
+    public String getProxyId() {
+        return getConfigValue("proxy.id", "");
+    }
+    
+    public boolean isDemandEnabled() {
+        return getConfigValue("demand.enabled", true);
+    }
+    
+    public int getDemandInterval() {
+        return getConfigValue("demand.interval", 5);
+    }
+    
+    public String getDemandTopic() {
+        return getConfigValue("topics.demand", "minecraft.demand");
+    }
+    
     public void reloadConfig() {
         loadConfig();
     }
@@ -159,5 +390,22 @@ public class VelocityConfigManager {
         public String getFallbackServer() { return fallbackServer; }
         public int getPriority() { return priority; }
     }
+    
+    // Étape d'une chaîne de secours : un groupe à équilibrer ou un serveur nommé
+    public static class FallbackTarget {
+        private final String name;
+        private final boolean server;
+        
+        private FallbackTarget(String name, boolean server) {
+            this.name = name;
+            this.server = server;
+        }
+        
+        public static FallbackTarget group(String groupName) { return new FallbackTarget(groupName, false); }
+        public static FallbackTarget server(String serverName) { return new FallbackTarget(serverName, true); }
+        
+        public String getName() { return name; }
+        public boolean isServer() { return server; }
+    }
 }
 
@@ -1,20 +1,26 @@
 package fr.nhsoul.dynamo.velocity.handler;
 
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.Subscribe;
-import com.velocitypowered.api.event.connection.LoginEvent;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
 import com.velocitypowered.api.event.player.KickedFromServerEvent;
+import com.velocitypowered.api.event.player.PlayerChooseInitialServerEvent;
 import com.velocitypowered.api.event.player.ServerConnectedEvent;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 import fr.nhsoul.dynamo.common.model.ServerInfo;
 import fr.nhsoul.dynamo.velocity.DynamoVelocityPlugin;
-import fr.nhsoul.dynamo.velocity.service.LoadBalancingService;
+import fr.nhsoul.dynamo.velocity.service.AdmissionQueueService;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.slf4j.Logger;
 
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public class PlayerConnectionHandler {
     private final DynamoVelocityPlugin plugin;
@@ -26,27 +32,168 @@ public class PlayerConnectionHandler {
     }
 
     @Subscribe(order = PostOrder.EARLY)
-    public void onPlayerLogin(LoginEvent event) {
+    public EventTask onChooseInitialServer(PlayerChooseInitialServerEvent event) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> pending = null;
+
+        try {
+            pending = chooseInitialServer(event);
+            if (pending == null) {
+                return null;
+            }
+
+            // Latence jusqu'au choix effectif : réservation et file d'attente comprises
+            return EventTask.resumeWhenComplete(pending.whenComplete((result, error) -> recordInitialServerLatency(start)));
+        } finally {
+            if (pending == null) {
+                recordInitialServerLatency(start);
+            }
+        }
+    }
+
+    // null si le serveur initial est choisi immédiatement, sinon la décision en cours
+    private CompletableFuture<Void> chooseInitialServer(PlayerChooseInitialServerEvent event) {
         Player player = event.getPlayer();
+        String defaultGroup = plugin.getConfigManager().getDefaultGroup();
+        AdmissionQueueService admissionQueue = plugin.getAdmissionQueueService();
+        plugin.getLoadBalancingService().getGroupActivity().recordLogin(defaultGroup);
+
+        // Groupe saturé : suspendre l'événement jusqu'à ce qu'une place se libère, sans bloquer de thread
+        if (admissionQueue.hasWaiting(defaultGroup)) {
+            return awaitInitialServer(event, defaultGroup);
+        }
 
-        // Sélectionner un serveur par défaut pour le joueur
-        Optional<ServerInfo> serverInfo = plugin.getLoadBalancingService().selectDefaultServer();
+        // Reconnexion récente : renvoyer le joueur sur son dernier serveur, sinon une seule sélection par connexion
+        Optional<ServerInfo> serverInfo = plugin.getLoadBalancingService().selectAffinityServer(player.getUniqueId(), null);
+        if (serverInfo.isEmpty()) {
+            serverInfo = plugin.getLoadBalancingService().selectDefaultServer(player.getUniqueId());
+        }
+
+        if (serverInfo.isEmpty() && admissionQueue.shouldQueue(defaultGroup)) {
+            return awaitInitialServer(event, defaultGroup);
+        }
 
         if (serverInfo.isPresent()) {
             String serverName = serverInfo.get().getName();
-            // Correction : utiliser le proxy pour obtenir le serveur enregistré
             Optional<RegisteredServer> server = plugin.getProxy().getServer(serverName);
 
-            if (server.isPresent()) {
-                // Le joueur sera connecté au serveur sélectionné automatiquement
+            if (server.isPresent() && plugin.getSlotReservationService().isEnabled()) {
+                // N'envoyer le joueur qu'une fois la place accordée par le serveur lui-même
+                return reserveInitialServer(event, serverInfo.get(), defaultGroup);
+            } else if (server.isPresent()) {
+                event.setInitialServer(server.get());
                 logger.debug("Joueur {} dirigé vers le serveur {}", player.getUsername(), serverName);
             } else {
                 logger.warn("Serveur {} non trouvé dans Velocity pour le joueur {}",
                         serverName, player.getUsername());
             }
         } else {
+            // Laisser Velocity appliquer sa liste de serveurs par défaut
             logger.warn("Aucun serveur par défaut disponible pour le joueur {}", player.getUsername());
         }
+
+        return null;
+    }
+
+    private void recordInitialServerLatency(long start) {
+        plugin.getLoadBalancingService().getInitialServerLatency().record(System.nanoTime() - start);
+    }
+
+    private CompletableFuture<Void> awaitInitialServer(PlayerChooseInitialServerEvent event, String groupName) {
+        Player player = event.getPlayer();
+
+        return awaitQueuedServer(player, groupName).thenAccept(server -> {
+            if (server.isPresent()) {
+                event.setInitialServer(server.get());
+                logger.debug("Joueur {} sorti de la file vers le serveur {}", player.getUsername(), server.get().getServerInfo().getName());
+            } else {
+                logger.warn("Attente expirée pour le joueur {} dans le groupe {}", player.getUsername(), groupName);
+            }
+        });
+    }
+
+    private CompletableFuture<Void> reserveInitialServer(PlayerChooseInitialServerEvent event, ServerInfo serverInfo,
+                                                         String groupName) {
+        Player player = event.getPlayer();
+
+        return reserveServer(player, serverInfo, new HashSet<>(),
+                denied -> plugin.getLoadBalancingService().selectServer(groupName, player.getUniqueId(), denied))
+                .thenCompose(server -> {
+                    if (server.isPresent()) {
+                        event.setInitialServer(server.get());
+                        logger.debug("Joueur {} dirigé vers le serveur {}", player.getUsername(), server.get().getServerInfo().getName());
+                        return CompletableFuture.completedFuture(null);
+                    }
+
+                    if (plugin.getConfigManager().isAdmissionQueueEnabled()) {
+                        return awaitInitialServer(event, groupName);
+                    }
+
+                    logger.warn("Aucune place accordée pour le joueur {} dans le groupe {}", player.getUsername(), groupName);
+                    return CompletableFuture.completedFuture(null);
+                });
+    }
+
+    // Attend son tour dans la file du groupe, puis fait confirmer la place par le serveur désigné.
+    // Un refus renvoie le joueur en file ; vide si l'attente expire ou si le joueur est parti
+    private CompletableFuture<Optional<RegisteredServer>> awaitQueuedServer(Player player, String groupName) {
+        return plugin.getAdmissionQueueService().enqueue(player, groupName)
+                .handle((serverInfo, error) -> serverInfo)
+                .thenCompose(serverInfo -> {
+                    if (serverInfo == null) {
+                        return CompletableFuture.completedFuture(Optional.<RegisteredServer>empty());
+                    }
+
+                    return reserveServer(player, serverInfo, new HashSet<>(),
+                            denied -> plugin.getLoadBalancingService().selectServer(groupName, player.getUniqueId(), denied))
+                            .thenCompose(server -> server.isPresent() || !player.isActive()
+                                    ? CompletableFuture.completedFuture(server)
+                                    : awaitQueuedServer(player, groupName));
+                });
+    }
+
+    // Toute route vers un serveur passe par ici : le serveur consomme une place par joueur attendu, un joueur
+    // envoyé sans réservation contournerait celles des autres proxies. Après un refus, next propose un autre
+    // serveur hors des refusés, dans la limite des tentatives configurées. Vide si aucun n'accorde de place
+    private CompletableFuture<Optional<RegisteredServer>> reserveServer(Player player, ServerInfo serverInfo, Set<String> denied,
+                                                                        Function<Set<String>, Optional<ServerInfo>> next) {
+        return reserveServer(player, serverInfo, plugin.getConfigManager().getReservationRetries(), denied, next);
+    }
+
+    private CompletableFuture<Optional<RegisteredServer>> reserveServer(Player player, ServerInfo serverInfo, int retries,
+                                                                        Set<String> denied,
+                                                                        Function<Set<String>, Optional<ServerInfo>> next) {
+        String serverName = serverInfo.getName();
+
+        // Accordé d'office, sans attente, quand la réservation est désactivée
+        return plugin.getSlotReservationService().reserve(serverName, player.getUniqueId()).thenCompose(granted -> {
+            if (granted) {
+                Optional<RegisteredServer> server = plugin.getProxy().getServer(serverName);
+                if (server.isPresent()) {
+                    return CompletableFuture.completedFuture(server);
+                }
+
+                // Serveur retiré de Velocity pendant la réservation : rendre la place accordée
+                plugin.getSlotReservationService().release(serverName, player.getUniqueId());
+                logger.warn("Serveur {} retiré avant l'arrivée du joueur {}", serverName, player.getUsername());
+            }
+
+            // Serveur plein en réalité (places prises par d'autres proxies) : essayer un autre serveur
+            plugin.getLoadBalancingService().releaseConnection(serverName, player.getUniqueId());
+            denied.add(serverName);
+            Optional<ServerInfo> other = retries > 0 ? next.apply(denied) : Optional.empty();
+
+            if (other.isPresent()) {
+                return reserveServer(player, other.get(), retries - 1, denied, next);
+            }
+            return CompletableFuture.completedFuture(Optional.<RegisteredServer>empty());
+        });
+    }
+
+    @Subscribe
+    public void onDisconnect(DisconnectEvent event) {
+        plugin.getAdmissionQueueService().cancel(event.getPlayer().getUniqueId());
+        plugin.getLoadBalancingService().onPlayerDisconnected(event.getPlayer().getUniqueId());
     }
 
     @Subscribe
@@ -54,67 +201,97 @@ public class PlayerConnectionHandler {
         Player player = event.getPlayer();
         RegisteredServer server = event.getServer();
 
+        // Le joueur est arrivé : il n'est plus une connexion en cours pour ce serveur, qui devient son serveur d'affinité
+        plugin.getLoadBalancingService().onPlayerConnected(player.getUniqueId(), server.getServerInfo().getName());
+
         logger.debug("Joueur {} connecté au serveur {}", player.getUsername(), server.getServerInfo().getName());
     }
 
     @Subscribe
-    public void onKickedFromServer(KickedFromServerEvent event) {
+    public EventTask onKickedFromServer(KickedFromServerEvent event) {
         Player player = event.getPlayer();
-        RegisteredServer kickedFrom = event.getServer();
+        String kickedFrom = event.getServer().getServerInfo().getName();
 
-        logger.info("Joueur {} éjecté du serveur {}", player.getUsername(), kickedFrom.getServerInfo().getName());
+        logger.info("Joueur {} éjecté du serveur {}", player.getUsername(), kickedFrom);
 
         // Essayer de rediriger vers un serveur de fallback
-        Optional<ServerInfo> fallbackServer = findFallbackServer(kickedFrom.getServerInfo().getName());
+        Optional<ServerInfo> fallbackServer = findFallbackServer(player, kickedFrom);
 
         if (fallbackServer.isPresent()) {
-            String fallbackServerName = fallbackServer.get().getName();
-            // Correction : utiliser le proxy pour obtenir le serveur enregistré
-            Optional<RegisteredServer> server = plugin.getProxy().getServer(fallbackServerName);
+            // Un refus fait reprendre la chaîne de secours sans le serveur quitté ni les serveurs refusés
+            Set<String> excluded = new HashSet<>();
+            excluded.add(kickedFrom);
+            CompletableFuture<Void> redirect = reserveServer(player, fallbackServer.get(), excluded,
+                    denied -> plugin.getLoadBalancingService().selectFallbackServer(kickedFrom, player.getUniqueId(), denied))
+                    .thenAccept(server -> redirectToFallback(event, server));
 
-            if (server.isPresent()) {
-                event.setResult(KickedFromServerEvent.RedirectPlayer.create(server.get()));
+            return redirect.isDone() ? null : EventTask.resumeWhenComplete(redirect);
+        }
 
-                player.sendMessage(Component.text()
-                        .append(Component.text("Vous avez été redirigé vers ", NamedTextColor.YELLOW))
-                        .append(Component.text(fallbackServerName, NamedTextColor.GREEN))
-                        .build());
+        String defaultGroup = plugin.getConfigManager().getDefaultGroup();
 
-                logger.info("Joueur {} redirigé vers le serveur de fallback {}",
-                        player.getUsername(), fallbackServerName);
-            } else {
-                logger.warn("Serveur de fallback {} non trouvé pour le joueur {}",
-                        fallbackServerName, player.getUsername());
-                // Fallback vers la déconnexion avec message personnalisé
-                event.setResult(KickedFromServerEvent.DisconnectPlayer.create(
-                        Component.text("Aucun serveur de fallback disponible", NamedTextColor.RED)
-                ));
-            }
+        // Groupe par défaut saturé : garder le joueur en attente d'une place plutôt que de le déconnecter
+        if (plugin.getAdmissionQueueService().shouldQueue(defaultGroup)) {
+            return queueFallbackServer(event, defaultGroup);
+        }
+
+        logger.warn("Aucun serveur de fallback disponible pour le joueur {}", player.getUsername());
+        // Fallback vers la déconnexion avec message personnalisé
+        event.setResult(KickedFromServerEvent.DisconnectPlayer.create(
+                Component.text("Aucun serveur disponible", NamedTextColor.RED)
+        ));
+        return null;
+    }
+
+    private void redirectToFallback(KickedFromServerEvent event, Optional<RegisteredServer> server) {
+        Player player = event.getPlayer();
+
+        if (server.isPresent()) {
+            String fallbackServerName = server.get().getServerInfo().getName();
+            event.setResult(KickedFromServerEvent.RedirectPlayer.create(server.get()));
+
+            player.sendMessage(Component.text()
+                    .append(Component.text("Vous avez été redirigé vers ", NamedTextColor.YELLOW))
+                    .append(Component.text(fallbackServerName, NamedTextColor.GREEN))
+                    .build());
+
+            logger.info("Joueur {} redirigé vers le serveur de fallback {}",
+                    player.getUsername(), fallbackServerName);
         } else {
-            logger.warn("Aucun serveur de fallback disponible pour le joueur {}", player.getUsername());
+            logger.warn("Aucune place accordée par les serveurs de fallback pour le joueur {}", player.getUsername());
             // Fallback vers la déconnexion avec message personnalisé
             event.setResult(KickedFromServerEvent.DisconnectPlayer.create(
-                    Component.text("Aucun serveur disponible", NamedTextColor.RED)
+                    Component.text("Aucun serveur de fallback disponible", NamedTextColor.RED)
             ));
         }
     }
 
-    private Optional<ServerInfo> findFallbackServer(String originalServerName) {
-        LoadBalancingService loadBalancingService = plugin.getLoadBalancingService();
+    private EventTask queueFallbackServer(KickedFromServerEvent event, String groupName) {
+        Player player = event.getPlayer();
+        AdmissionQueueService admissionQueue = plugin.getAdmissionQueueService();
+        CompletableFuture<Optional<RegisteredServer>> queued = awaitQueuedServer(player, groupName);
 
-        // Essayer de trouver un serveur de fallback dans le même groupe
-        ServerInfo originalServer = plugin.getDiscoveryService().getServerInfo(originalServerName);
+        int position = admissionQueue.getPosition(player.getUniqueId());
+        long estimate = admissionQueue.estimateWaitSeconds(groupName, position);
+        player.sendMessage(Component.text()
+                .append(Component.text("Serveurs pleins, vous êtes en file d'attente : position ", NamedTextColor.YELLOW))
+                .append(Component.text(position, NamedTextColor.GREEN))
+                .append(Component.text(estimate >= 0 ? " (environ " + estimate + "s)" : "", NamedTextColor.GRAY))
+                .build());
 
-        if (originalServer != null) {
-            for (String group : originalServer.getGroups()) {
-                Optional<ServerInfo> fallback = loadBalancingService.selectServer(group);
-                if (fallback.isPresent() && !fallback.get().getName().equals(originalServerName)) {
-                    return fallback;
-                }
+        return EventTask.resumeWhenComplete(queued.thenAccept(server -> {
+            if (server.isPresent()) {
+                event.setResult(KickedFromServerEvent.RedirectPlayer.create(server.get()));
+            } else {
+                event.setResult(KickedFromServerEvent.DisconnectPlayer.create(
+                        Component.text("Aucun serveur disponible", NamedTextColor.RED)
+                ));
             }
-        }
+        }));
+    }
 
-        // Fallback vers le serveur par défaut
-        return loadBalancingService.selectDefaultServer();
+    private Optional<ServerInfo> findFallbackServer(Player player, String originalServerName) {
+        // Chaîne précompilée au chargement de la configuration : groupe d'origine, fallback-server, groupes par priorité
+        return plugin.getLoadBalancingService().selectFallbackServer(originalServerName, player.getUniqueId());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package fr.nhsoul.dynamo.velocity.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Compteurs cumulés par groupe (connexions, sélections refusées, redirections de secours).
+// Les lecteurs calculent eux-mêmes les débits à partir de deux relevés successifs.
+public class GroupActivityCounters {
+    private final Map<String, Counters> countersByGroup = new ConcurrentHashMap<>();
+
+    public void recordLogin(String groupName) {
+        get(groupName).logins.increment();
+    }
+
+    public void recordRejected(String groupName) {
+        get(groupName).rejected.increment();
+    }
+
+    public void recordFallback(String groupName) {
+        get(groupName).fallbacks.increment();
+    }
+
+    public long getLogins(String groupName) {
+        Counters counters = countersByGroup.get(groupName);
+        return counters != null ? counters.logins.sum() : 0;
+    }
+
+    public long getRejected(String groupName) {
+        Counters counters = countersByGroup.get(groupName);
+        return counters != null ? counters.rejected.sum() : 0;
+    }
+
+    public long getFallbacks(String groupName) {
+        Counters counters = countersByGroup.get(groupName);
+        return counters != null ? counters.fallbacks.sum() : 0;
+    }
+
+    private Counters get(String groupName) {
+        return countersByGroup.computeIfAbsent(groupName, k -> new Counters());
+    }
+
+    private static class Counters {
+        private final LongAdder logins = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder fallbacks = new LongAdder();
+    }
+}
@@ -0,0 +1,71 @@
+package fr.nhsoul.dynamo.velocity.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histogramme de latences à seaux en puissances de deux (nanosecondes).
+// L'enregistrement est sans verrou ni allocation : il peut rester sur le chemin de connexion.
+public class LatencyRecorder {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyRecorder() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) return;
+
+        buckets[nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getAverageMicros() {
+        long samples = count.sum();
+        return samples == 0 ? 0.0 : totalNanos.sum() / (double) samples / 1000.0;
+    }
+
+    public double getMaxMicros() {
+        return maxNanos.get() / 1000.0;
+    }
+
+    // Borne supérieure du seau contenant le percentile demandé
+    public double getPercentileMicros(double percentile) {
+        long samples = count.sum();
+        if (samples == 0) return 0.0;
+
+        long threshold = (long) Math.ceil(samples * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= threshold) {
+                long upperBound = i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                return Math.min(upperBound, maxNanos.get()) / 1000.0;
+            }
+        }
+        return getMaxMicros();
+    }
+
+    public String formatMillis() {
+        return String.format("n=%d moy=%.1fms p50=%.1fms p99=%.1fms max=%.1fms",
+                getCount(), getAverageMicros() / 1000.0, getPercentileMicros(50) / 1000.0,
+                getPercentileMicros(99) / 1000.0, getMaxMicros() / 1000.0);
+    }
+
+    public String format() {
+        return String.format("n=%d moy=%.1fµs p50=%.1fµs p99=%.1fµs max=%.1fµs",
+                getCount(), getAverageMicros(), getPercentileMicros(50), getPercentileMicros(99), getMaxMicros());
+    }
+}
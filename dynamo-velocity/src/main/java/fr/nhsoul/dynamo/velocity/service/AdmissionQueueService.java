@@ -0,0 +1,232 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import com.velocitypowered.api.proxy.Player;
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager;
+import org.slf4j.Logger;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// File d'attente côté proxy quand tous les serveurs d'un groupe sont pleins.
+// Chaque joueur en attente n'est qu'un ticket portant un CompletableFuture : aucun thread n'est bloqué,
+// les tickets sont servis quand un serveur du groupe annonce des places libres.
+public class AdmissionQueueService {
+    private static final long RATE_WINDOW_MS = 60_000L;
+
+    private final ServerDiscoveryService discoveryService;
+    private final LoadBalancingService loadBalancingService;
+    private final VelocityConfigManager configManager;
+    private final Logger logger;
+
+    private final Map<String, Queue<Ticket>> queues = new ConcurrentHashMap<>();
+    private final Map<UUID, Ticket> ticketsByPlayer = new ConcurrentHashMap<>();
+    // Joueurs en attente par groupe et par priorité : la position d'entrée se calcule sans parcourir la file
+    private final Map<String, Map<Integer, AtomicInteger>> waitingByPriority = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentLinkedDeque<Long>> releasesByGroup = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public AdmissionQueueService(ServerDiscoveryService discoveryService, LoadBalancingService loadBalancingService,
+                                 VelocityConfigManager configManager, Logger logger) {
+        this.discoveryService = discoveryService;
+        this.loadBalancingService = loadBalancingService;
+        this.configManager = configManager;
+        this.logger = logger;
+
+        // Chaque mise à jour de serveur peut libérer des places pour les joueurs en attente
+        discoveryService.addUpdateListener(this::onServerUpdated);
+    }
+
+    // Un groupe est saturé s'il a des serveurs vivants mais aucun disponible, ou si des joueurs y attendent déjà
+    public boolean shouldQueue(String groupName) {
+        if (!configManager.isAdmissionQueueEnabled()) {
+            return false;
+        }
+
+        if (hasWaiting(groupName)) {
+            return true;
+        }
+
+        GroupIndex.GroupLoad load = discoveryService.getGroupIndex().getLoad(groupName);
+        return load != null && load.getMembers() > 0 && loadBalancingService.getServersInGroup(groupName).isEmpty();
+    }
+
+    public boolean hasWaiting(String groupName) {
+        Queue<Ticket> queue = queues.get(groupName);
+        return queue != null && !queue.isEmpty();
+    }
+
+    public CompletableFuture<ServerInfo> enqueue(Player player, String groupName) {
+        Ticket previous = ticketsByPlayer.remove(player.getUniqueId());
+        if (previous != null) {
+            previous.future.cancel(false);
+        }
+
+        int priority = getPriority(player);
+        Map<Integer, AtomicInteger> counts = waitingByPriority.computeIfAbsent(groupName, k -> new ConcurrentHashMap<>());
+
+        // Passent devant : les joueurs déjà en attente de priorité égale ou supérieure (quelques niveaux au plus)
+        int ahead = 0;
+        for (Map.Entry<Integer, AtomicInteger> entry : counts.entrySet()) {
+            if (entry.getKey() >= priority) {
+                ahead += entry.getValue().get();
+            }
+        }
+        AtomicInteger sameLevel = counts.computeIfAbsent(priority, k -> new AtomicInteger());
+        sameLevel.incrementAndGet();
+
+        Ticket ticket = new Ticket(player.getUniqueId(), priority, sequence.incrementAndGet(), ahead + 1);
+        Queue<Ticket> queue = queues.computeIfAbsent(groupName, k -> new PriorityBlockingQueue<>(64, TICKET_ORDER));
+
+        ticketsByPlayer.put(ticket.playerId, ticket);
+        waiting.incrementAndGet();
+        queue.add(ticket);
+
+        // Le délai est porté par le future lui-même, sans thread dédié par joueur
+        ticket.future.orTimeout(configManager.getAdmissionQueueMaxWait(), TimeUnit.SECONDS);
+        ticket.future.whenComplete((serverInfo, error) -> {
+            waiting.decrementAndGet();
+            sameLevel.decrementAndGet();
+            ticketsByPlayer.remove(ticket.playerId, ticket);
+            if (serverInfo == null) {
+                queue.remove(ticket);
+            }
+        });
+
+        logger.debug("Joueur {} en file d'attente pour le groupe {} (position {}, priorité {})",
+                player.getUsername(), groupName, ticket.position, ticket.priority);
+
+        // Une place a pu se libérer entre la sélection et la mise en file
+        loadBalancingService.getServersInGroup(groupName).forEach(this::onServerUpdated);
+
+        return ticket.future;
+    }
+
+    public void cancel(UUID playerId) {
+        Ticket ticket = ticketsByPlayer.get(playerId);
+        if (ticket != null) {
+            ticket.future.cancel(false);
+        }
+    }
+
+    // Position à l'entrée en file, calculée une fois : indicative, les joueurs servis avant ne la mettent pas à jour
+    public int getPosition(UUID playerId) {
+        Ticket ticket = ticketsByPlayer.get(playerId);
+        return ticket != null ? ticket.position : 0;
+    }
+
+    // Attente estimée à partir du débit de libération du groupe sur la dernière minute
+    public long estimateWaitSeconds(String groupName, int position) {
+        double rate = getReleaseRate(groupName);
+        if (rate <= 0) {
+            return -1;
+        }
+        return (long) Math.ceil(position / rate);
+    }
+
+    public int getQueueSize(String groupName) {
+        Queue<Ticket> queue = queues.get(groupName);
+        return queue != null ? queue.size() : 0;
+    }
+
+    public Set<String> getQueuedGroups() {
+        return queues.keySet();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    private synchronized void onServerUpdated(ServerInfo serverInfo) {
+        if (waiting.get() == 0 || serverInfo.getGroups() == null) return;
+
+        int free = serverInfo.getMaxPlayers() - serverInfo.getCurrentPlayers()
+                - loadBalancingService.getPendingConnections(serverInfo.getName());
+
+        for (String group : serverInfo.getGroups()) {
+            Queue<Ticket> queue = queues.get(group);
+            if (queue == null) continue;
+
+            Ticket ticket;
+            while (free > 0 && (ticket = queue.poll()) != null) {
+                // Réserver la place avant de réveiller le joueur pour que la suivante soit bien comptée
+                loadBalancingService.reserveConnection(serverInfo.getName(), ticket.playerId);
+                if (ticket.future.complete(serverInfo)) {
+                    free--;
+                    recordRelease(group);
+                } else {
+                    loadBalancingService.releaseConnection(serverInfo.getName(), ticket.playerId);
+                }
+            }
+        }
+    }
+
+    private void recordRelease(String groupName) {
+        long now = System.currentTimeMillis();
+        ConcurrentLinkedDeque<Long> releases = releasesByGroup.computeIfAbsent(groupName, k -> new ConcurrentLinkedDeque<>());
+        releases.addLast(now);
+        purge(releases, now);
+    }
+
+    private double getReleaseRate(String groupName) {
+        ConcurrentLinkedDeque<Long> releases = releasesByGroup.get(groupName);
+        if (releases == null) return 0.0;
+
+        long now = System.currentTimeMillis();
+        purge(releases, now);
+
+        Long oldest = releases.peekFirst();
+        if (oldest == null) return 0.0;
+
+        // Débit sur la fenêtre réellement couverte, au moins une seconde
+        double span = Math.max(1000L, now - oldest) / 1000.0;
+        return releases.size() / span;
+    }
+
+    private static void purge(ConcurrentLinkedDeque<Long> releases, long now) {
+        Long oldest;
+        while ((oldest = releases.peekFirst()) != null && now - oldest > RATE_WINDOW_MS) {
+            releases.pollFirst();
+        }
+    }
+
+    private int getPriority(Player player) {
+        int priority = 0;
+        for (Map.Entry<String, Integer> entry : configManager.getAdmissionQueuePriorities().entrySet()) {
+            if (entry.getValue() > priority && player.hasPermission(entry.getKey())) {
+                priority = entry.getValue();
+            }
+        }
+        return priority;
+    }
+
+    private static final Comparator<Ticket> TICKET_ORDER = Comparator
+            .comparingInt((Ticket ticket) -> -ticket.priority)
+            .thenComparingLong(ticket -> ticket.sequence);
+
+    private static class Ticket {
+        private final UUID playerId;
+        private final int priority;
+        private final long sequence;
+        private final int position;
+        private final CompletableFuture<ServerInfo> future = new CompletableFuture<>();
+
+        private Ticket(UUID playerId, int priority, long sequence, int position) {
+            this.playerId = playerId;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.position = position;
+        }
+    }
+}
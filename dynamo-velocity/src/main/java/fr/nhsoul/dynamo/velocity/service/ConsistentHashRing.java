@@ -0,0 +1,87 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+// Anneau de hachage cohérent par groupe, mis à jour serveur par serveur par l'index des groupes.
+// Chaque serveur occupe plusieurs points virtuels pour lisser la répartition.
+public class ConsistentHashRing implements GroupIndex.MembershipListener {
+    private static final int VIRTUAL_NODES = 64;
+
+    private final Map<String, NavigableMap<Long, ServerInfo>> rings = new ConcurrentHashMap<>();
+
+    @Override
+    public void onServerAdded(String group, ServerInfo serverInfo) {
+        NavigableMap<Long, ServerInfo> ring = rings.computeIfAbsent(group, k -> new ConcurrentSkipListMap<>());
+        for (int i = 0; i < VIRTUAL_NODES; i++) {
+            ring.put(hashPoint(serverInfo.getName(), i), serverInfo);
+        }
+    }
+
+    @Override
+    public void onServerRemoved(String group, String serverName) {
+        NavigableMap<Long, ServerInfo> ring = rings.get(group);
+        if (ring == null) return;
+
+        for (int i = 0; i < VIRTUAL_NODES; i++) {
+            long point = hashPoint(serverName, i);
+            ServerInfo owner = ring.get(point);
+            if (owner != null && serverName.equals(owner.getName())) {
+                ring.remove(point, owner);
+            }
+        }
+
+        if (ring.isEmpty()) {
+            rings.remove(group, ring);
+        }
+    }
+
+    // Parcourt l'anneau à partir du point du joueur et renvoie le premier serveur accepté
+    public ServerInfo select(String group, UUID playerId, Predicate<ServerInfo> accept) {
+        NavigableMap<Long, ServerInfo> ring = rings.get(group);
+        if (ring == null) return null;
+
+        long hash = hashPlayer(playerId);
+
+        for (ServerInfo serverInfo : ring.tailMap(hash, true).values()) {
+            if (accept.test(serverInfo)) return serverInfo;
+        }
+        for (ServerInfo serverInfo : ring.headMap(hash, false).values()) {
+            if (accept.test(serverInfo)) return serverInfo;
+        }
+
+        return null;
+    }
+
+    private static long hashPoint(String serverName, int replica) {
+        // FNV-1a 64 bits puis mélange final pour bien répartir les points voisins
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : serverName.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= replica;
+        hash *= 0x100000001b3L;
+        return mix(hash);
+    }
+
+    private static long hashPlayer(UUID playerId) {
+        return mix(playerId.getMostSignificantBits() ^ Long.rotateLeft(playerId.getLeastSignificantBits(), 32));
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
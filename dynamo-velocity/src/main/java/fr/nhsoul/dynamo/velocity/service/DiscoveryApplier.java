@@ -0,0 +1,287 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.ServerDelta;
+import fr.nhsoul.dynamo.common.model.ServerEvent;
+import fr.nhsoul.dynamo.velocity.metrics.LatencyRecorder;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Unique écrivain du registre : toutes les mutations de découverte (messages NATS, expirations)
+// sont appliquées dans l'ordre par un seul thread.
+// Chaque serveur a sa boîte aux lettres bornée : tant qu'elle attend, un heartbeat complet remplace le précédent
+// et des deltas successifs se cumulent en un seul ; REGISTER, UNREGISTER et expirations gardent leur place.
+// Boîte pleine : tout ce qui précède le dernier changement d'appartenance est remplacé par lui, jamais abandonné.
+// La file de travail ne contient que des boîtes à traiter : sa taille est bornée par le nombre de serveurs.
+public class DiscoveryApplier {
+    private static final int MAILBOX_CAPACITY = 16;
+
+    private final Sink sink;
+    private final Logger logger;
+    private final Map<Object, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final BlockingQueue<Mailbox> ready = new LinkedBlockingQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LatencyRecorder lag = new LatencyRecorder();
+    private Thread thread;
+
+    public DiscoveryApplier(Sink sink, Logger logger) {
+        this.sink = sink;
+        this.logger = logger;
+    }
+
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            thread = new Thread(this::run, "dynamo-discovery-applier");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void stop() {
+        if (running.compareAndSet(true, false)) {
+            if (thread != null) {
+                thread.interrupt();
+            }
+            ready.clear();
+            mailboxes.clear();
+            backlog.set(0);
+        }
+    }
+
+    public void submit(ServerEvent event) {
+        received.increment();
+
+        // Même boîte pour les messages complets et les deltas d'un émetteur v2 : leur ordre est conservé
+        Object key = event.getServerId() != 0 ? (Object) event.getServerId() : keyOf(event.getServerInfo().getName());
+        enqueue(key, new Mutation(event, null, event.getSequence(), null));
+    }
+
+    public void submitExpiry(String serverName) {
+        enqueue(keyOf(serverName), new Mutation(null, serverName, 0, null));
+    }
+
+    // Expirations et suppressions KV ne connaissent que le nom : les ranger dans la boîte de l'identifiant
+    // du serveur, sans quoi elles pourraient passer avant ou après ses événements en attente
+    private Object keyOf(String serverName) {
+        Integer serverId = sink.getServerId(serverName);
+        return serverId != null ? (Object) serverId : serverName;
+    }
+
+    // Attend que tout ce qui a été soumis avant l'appel soit appliqué : la file de travail étant servie
+    // dans l'ordre par un seul thread, une boîte témoin ajoutée en dernier passe après toutes les autres
+    public boolean awaitApplied(long timeoutMs) throws InterruptedException {
+        if (!running.get()) return false;
+
+        CountDownLatch applied = new CountDownLatch(1);
+        Mailbox marker = new Mailbox(applied);
+        marker.add(new Mutation(null, null, 0, applied));
+        ready.add(marker);
+
+        return applied.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public int getBacklog() {
+        return backlog.get();
+    }
+
+    // Du timestamp de l'émetteur à l'application : inclut le décalage d'horloge entre serveur et proxy
+    public LatencyRecorder getLag() {
+        return lag;
+    }
+
+    private void enqueue(Object key, Mutation mutation) {
+        while (true) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(key, Mailbox::new);
+            Boolean schedule = mailbox.add(mutation);
+            if (schedule == null) {
+                // Boîte fermée entre la lecture et l'ajout : en prendre une neuve
+                continue;
+            }
+            if (schedule) {
+                ready.add(mailbox);
+            }
+            return;
+        }
+    }
+
+    private void run() {
+        while (running.get()) {
+            try {
+                Mailbox mailbox = ready.take();
+
+                for (Mutation mutation : mailbox.drain()) {
+                    apply(mutation);
+                }
+                mailbox.closeIfIdle();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Erreur lors de l'application des mutations de découverte", e);
+            }
+        }
+    }
+
+    private void apply(Mutation mutation) {
+        try {
+            if (mutation.applied != null) {
+                mutation.applied.countDown();
+            } else if (mutation.expiredServer != null) {
+                sink.onExpired(mutation.expiredServer);
+            } else {
+                sink.onEvent(mutation.event, mutation.firstSequence);
+
+                long timestamp = mutation.event.getTimestamp();
+                if (timestamp > 0) {
+                    lag.record((System.currentTimeMillis() - timestamp) * 1_000_000L);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Erreur lors de l'application d'une mutation de découverte", e);
+        }
+    }
+
+    private static Mutation merge(Mutation previous, Mutation next) {
+        ServerDelta older = previous.event.getDelta();
+        ServerDelta newer = next.event.getDelta();
+
+        ServerDelta merged = new ServerDelta();
+        merged.setCurrentPlayers(newer.getCurrentPlayers() != null ? newer.getCurrentPlayers() : older.getCurrentPlayers());
+        merged.setMaxPlayers(newer.getMaxPlayers() != null ? newer.getMaxPlayers() : older.getMaxPlayers());
+        merged.setWeight(newer.getWeight() != null ? newer.getWeight() : older.getWeight());
+        merged.setTps(newer.getTps() != null ? newer.getTps() : older.getTps());
+        merged.setMspt(newer.getMspt() != null ? newer.getMspt() : older.getMspt());
+
+        ServerEvent event = new ServerEvent();
+        event.setType(next.event.getType());
+        event.setTimestamp(next.event.getTimestamp());
+        event.setServerId(next.event.getServerId());
+        event.setSequence(next.event.getSequence());
+        event.setDelta(merged);
+
+        // La séquence de départ du cumul permet encore de détecter un vrai trou
+        return new Mutation(event, null, previous.firstSequence, null);
+    }
+
+    private final class Mailbox {
+        private final Object key;
+        private List<Mutation> pending = new ArrayList<>(2);
+        private boolean scheduled;
+        private boolean closed;
+
+        private Mailbox(Object key) {
+            this.key = key;
+        }
+
+        // true si la boîte doit être programmée, null si elle est fermée
+        private synchronized Boolean add(Mutation mutation) {
+            if (closed) return null;
+
+            int last = pending.size() - 1;
+            Mutation previous = last >= 0 ? pending.get(last) : null;
+
+            if (previous != null && !mutation.isBarrier() && !previous.isBarrier()
+                    && (mutation.event.isFull() || !previous.event.isFull())) {
+                // Un message complet remplace le précédent ; des deltas successifs se cumulent en un seul
+                pending.set(last, mutation.event.isFull() ? mutation : merge(previous, mutation));
+                coalesced.increment();
+            } else {
+                if (pending.size() >= MAILBOX_CAPACITY) {
+                    compact(mutation);
+                }
+                pending.add(mutation);
+                backlog.incrementAndGet();
+            }
+
+            if (scheduled) return false;
+            scheduled = true;
+            return true;
+        }
+
+        // Ne peut arriver qu'avec une rafale de REGISTER/UNREGISTER. L'état d'un serveur ne dépend que de son dernier
+        // changement d'appartenance (REGISTER complet, UNREGISTER ou expiration) et de ce qui le suit :
+        // ce qui le précède est remplacé par lui, comme un heartbeat complet remplace le précédent
+        private void compact(Mutation next) {
+            int from = next.isBarrier() ? pending.size() : 0;
+            if (from == 0) {
+                for (int i = pending.size() - 1; i > 0; i--) {
+                    if (pending.get(i).isBarrier()) {
+                        from = i;
+                        break;
+                    }
+                }
+            }
+
+            pending.subList(0, from).clear();
+            coalesced.add(from);
+            backlog.addAndGet(-from);
+        }
+
+        private synchronized List<Mutation> drain() {
+            List<Mutation> drained = pending;
+            pending = new ArrayList<>(2);
+            scheduled = false;
+            backlog.addAndGet(-drained.size());
+            return drained;
+        }
+
+        // Boîte vide après traitement : la retirer, les serveurs disparus ne laissent rien derrière eux
+        private synchronized void closeIfIdle() {
+            if (pending.isEmpty() && !scheduled) {
+                closed = true;
+                mailboxes.remove(key, this);
+            }
+        }
+    }
+
+    public interface Sink {
+        void onEvent(ServerEvent event, long firstSequence);
+
+        void onExpired(String serverName);
+
+        // Identifiant compact connu pour ce serveur, null pour un émetteur v1 ou un serveur inconnu
+        Integer getServerId(String serverName);
+    }
+
+    private static class Mutation {
+        private final ServerEvent event;
+        private final String expiredServer;
+        private final long firstSequence;
+        private final CountDownLatch applied;
+
+        private Mutation(ServerEvent event, String expiredServer, long firstSequence, CountDownLatch applied) {
+            this.event = event;
+            this.expiredServer = expiredServer;
+            this.firstSequence = firstSequence;
+            this.applied = applied;
+        }
+
+        // Expirations et témoins n'ont pas d'événement : jamais fusionnés
+        private boolean isBarrier() {
+            return event == null
+                || event.getType() == ServerEvent.EventType.REGISTER
+                || event.getType() == ServerEvent.EventType.UNREGISTER;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.ServerEvent;
+import fr.nhsoul.dynamo.common.util.ProtobufSerializer;
+import fr.nhsoul.dynamo.velocity.metrics.LatencyRecorder;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Étage d'ingestion entre le dispatcher NATS et l'applicateur du registre.
+// Le dispatcher ne fait que déposer les octets reçus dans une file bornée ; le décodage protobuf
+// se fait sur des threads dédiés. Chaque décodeur a sa file et tous les événements d'un même serveur passent
+// par le même décodeur : ils atteignent l'applicateur dans l'ordre d'arrivée, quel que soit le nombre de threads.
+// File pleine : le dispatcher attend au plus maxBlockMs (contre-pression
+// vers le tampon du client NATS), puis le message est abandonné et compté — le heartbeat suivant
+// ou une resynchronisation rattrape l'état. Seuls les heartbeats et les arrivées/départs de joueurs peuvent
+// l'être : un enregistrement ou un retrait perdu ne serait rattrapé par rien, le dispatcher attend sa place.
+public class DiscoveryIngest {
+    private final Sink sink;
+    private final Logger logger;
+    private final List<BlockingQueue<RawEvent>> queues = new ArrayList<>();
+    private final long maxBlockMs;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final LongAdder dropped = new LongAdder();
+    private final LatencyRecorder decodeTime = new LatencyRecorder();
+    private final List<Thread> threads = new ArrayList<>();
+
+    public DiscoveryIngest(Sink sink, int capacity, int decodeThreads, long maxBlockMs, Logger logger) {
+        this.sink = sink;
+        this.logger = logger;
+        int threads = Math.max(1, decodeThreads);
+        for (int i = 0; i < threads; i++) {
+            queues.add(new ArrayBlockingQueue<>(Math.max(1, capacity / threads)));
+        }
+        this.maxBlockMs = Math.max(0, maxBlockMs);
+    }
+
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            for (int i = 0; i < queues.size(); i++) {
+                BlockingQueue<RawEvent> queue = queues.get(i);
+                Thread thread = new Thread(() -> run(queue), "dynamo-discovery-decode-" + i);
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
+            }
+        }
+    }
+
+    public void stop() {
+        if (running.compareAndSet(true, false)) {
+            threads.forEach(Thread::interrupt);
+            threads.clear();
+            queues.forEach(BlockingQueue::clear);
+        }
+    }
+
+    // Appelé par le dispatcher NATS : l'heure d'arrivée est relevée ici, avant toute attente
+    public void offer(byte[] data) {
+        if (!running.get()) return;
+
+        RawEvent raw = new RawEvent(data, System.currentTimeMillis());
+        BlockingQueue<RawEvent> queue = queues.size() == 1
+            ? queues.get(0) : queues.get(Math.floorMod(ProtobufSerializer.peekServerKey(data), queues.size()));
+        try {
+            if (queue.offer(raw) || queue.offer(raw, maxBlockMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+
+            if (!isDroppable(data)) {
+                // Attendre sans limite, mais par tranches pour ne pas rester bloqué après l'arrêt
+                while (running.get()) {
+                    if (queue.offer(raw, Math.max(1, maxBlockMs), TimeUnit.MILLISECONDS)) return;
+                }
+                return;
+            }
+
+            dropped.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Message illisible : abandonnable, le décodeur l'aurait rejeté de toute façon
+    private static boolean isDroppable(byte[] data) {
+        ServerEvent.EventType type = ProtobufSerializer.peekEventType(data);
+        return type != ServerEvent.EventType.REGISTER && type != ServerEvent.EventType.UNREGISTER;
+    }
+
+    public int getBacklog() {
+        int backlog = 0;
+        for (BlockingQueue<RawEvent> queue : queues) {
+            backlog += queue.size();
+        }
+        return backlog;
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public LatencyRecorder getDecodeTime() {
+        return decodeTime;
+    }
+
+    private void run(BlockingQueue<RawEvent> queue) {
+        while (running.get()) {
+            RawEvent raw;
+            try {
+                raw = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                long start = System.nanoTime();
+                ServerEvent event = ProtobufSerializer.deserializeServerEvent(raw.data);
+                decodeTime.record(System.nanoTime() - start);
+
+                sink.onDecoded(event, raw.arrivalMs);
+            } catch (Exception e) {
+                logger.error("Erreur lors du décodage d'un événement serveur", e);
+            }
+        }
+    }
+
+    public interface Sink {
+        void onDecoded(ServerEvent event, long arrivalMs);
+    }
+
+    private static class RawEvent {
+        private final byte[] data;
+        private final long arrivalMs;
+
+        private RawEvent(byte[] data, long arrivalMs) {
+            this.data = data;
+            this.arrivalMs = arrivalMs;
+        }
+    }
+}
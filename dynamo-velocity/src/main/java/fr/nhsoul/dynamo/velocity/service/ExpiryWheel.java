@@ -0,0 +1,121 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Roue temporelle d'expiration des serveurs.
+// Un heartbeat ne fait que repousser l'échéance de l'entrée existante (une écriture volatile) ;
+// l'entrée n'est déplacée que lorsque sa case est atteinte et que l'échéance a été repoussée entre-temps.
+public class ExpiryWheel {
+    private final long tickMs;
+    private final ArrayDeque<Entry>[] slots;
+    private final int mask;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Consumer<String> onExpired;
+
+    // Dernier tick traité, protégé par le moniteur de la roue comme les cases
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public ExpiryWheel(long tickMs, long horizonMs, Consumer<String> onExpired) {
+        this.tickMs = Math.max(1, tickMs);
+        this.onExpired = onExpired;
+
+        // Assez de cases pour couvrir le délai d'expiration : une entrée n'est revisitée qu'une fois par échéance
+        int size = Integer.highestOneBit((int) Math.min(1 << 20, horizonMs / this.tickMs + 2) * 2 - 1);
+        this.slots = new ArrayDeque[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.currentTick = System.currentTimeMillis() / this.tickMs;
+    }
+
+    public void touch(String name, long deadline) {
+        Entry entry = entries.get(name);
+        if (entry != null) {
+            entry.deadline = deadline;
+            return;
+        }
+
+        entry = new Entry(name, deadline);
+        Entry previous = entries.putIfAbsent(name, entry);
+        if (previous != null) {
+            previous.deadline = deadline;
+            return;
+        }
+
+        synchronized (this) {
+            schedule(entry);
+        }
+    }
+
+    public void remove(String name) {
+        Entry entry = entries.remove(name);
+        if (entry != null) {
+            // Retrait paresseux : l'entrée sera ignorée quand sa case sera atteinte
+            entry.cancelled = true;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Appelé à chaque tick : traite les cases échues depuis le dernier passage
+    public void advance(long now) {
+        List<String> expired = new ArrayList<>();
+
+        synchronized (this) {
+            long targetTick = now / tickMs;
+            while (currentTick <= targetTick) {
+                ArrayDeque<Entry> slot = slots[(int) (currentTick & mask)];
+                int pending = slot.size();
+
+                for (int i = 0; i < pending; i++) {
+                    Entry entry = slot.pollFirst();
+                    if (entry.cancelled) continue;
+
+                    if (entry.deadline <= now) {
+                        if (entries.remove(entry.name, entry)) {
+                            expired.add(entry.name);
+                        }
+                    } else {
+                        schedule(entry);
+                    }
+                }
+                currentTick++;
+            }
+        }
+
+        // Les rappels s'exécutent hors du moniteur : ils peuvent réarmer une entrée
+        for (String name : expired) {
+            onExpired.accept(name);
+        }
+    }
+
+    private void schedule(Entry entry) {
+        // Jamais dans la case en cours de traitement : au plus tôt au tick suivant
+        long tick = Math.max(ceilDiv(entry.deadline, tickMs), currentTick + 1);
+        slots[(int) (tick & mask)].addLast(entry);
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+
+    private static class Entry {
+        private final String name;
+        private volatile long deadline;
+        private volatile boolean cancelled;
+
+        private Entry(String name, long deadline) {
+            this.name = name;
+            this.deadline = deadline;
+        }
+    }
+}
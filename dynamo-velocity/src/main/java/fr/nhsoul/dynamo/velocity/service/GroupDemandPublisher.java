@@ -0,0 +1,123 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.GroupDemand;
+import fr.nhsoul.dynamo.common.util.NetworkUtils;
+import fr.nhsoul.dynamo.common.util.ProtobufSerializer;
+import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager;
+import fr.nhsoul.dynamo.velocity.metrics.GroupActivityCounters;
+import org.slf4j.Logger;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Publie périodiquement la demande de chaque groupe (capacité, file d'attente, débits) pour les autoscalers.
+// Les agrégats viennent de l'index de groupes, déjà tenus à jour : aucun parcours des serveurs à la publication.
+public class GroupDemandPublisher {
+    private final NatsService natsService;
+    private final ServerDiscoveryService discoveryService;
+    private final LoadBalancingService loadBalancingService;
+    private final AdmissionQueueService admissionQueueService;
+    private final VelocityConfigManager configManager;
+    private final Logger logger;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // Derniers relevés des compteurs cumulés, pour en déduire les débits de chaque intervalle
+    private final Map<String, long[]> lastCounters = new HashMap<>();
+    private String proxyId;
+    private long lastPublish;
+    private ScheduledExecutorService scheduler;
+
+    public GroupDemandPublisher(NatsService natsService, ServerDiscoveryService discoveryService,
+                                LoadBalancingService loadBalancingService, AdmissionQueueService admissionQueueService,
+                                VelocityConfigManager configManager, Logger logger) {
+        this.natsService = natsService;
+        this.discoveryService = discoveryService;
+        this.loadBalancingService = loadBalancingService;
+        this.admissionQueueService = admissionQueueService;
+        this.configManager = configManager;
+        this.logger = logger;
+    }
+
+    public void start() {
+        if (!configManager.isDemandEnabled()) {
+            return;
+        }
+
+        if (running.compareAndSet(false, true)) {
+            String configuredId = configManager.getProxyId();
+            proxyId = configuredId != null && !configuredId.isEmpty() ? configuredId : NetworkUtils.getLocalIPAddress();
+            lastPublish = System.currentTimeMillis();
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+
+            int interval = Math.max(1, configManager.getDemandInterval());
+            scheduler.scheduleAtFixedRate(this::publishDemand, interval, interval, TimeUnit.SECONDS);
+
+            logger.info("Publication de la demande par groupe démarrée (toutes les {}s).", interval);
+        }
+    }
+
+    public void stop() {
+        if (running.compareAndSet(true, false)) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+
+            logger.info("Publication de la demande par groupe arrêtée.");
+        }
+    }
+
+    private void publishDemand() {
+        if (!running.get() || !natsService.isConnected()) return;
+
+        try {
+            long now = System.currentTimeMillis();
+            double elapsed = Math.max(1L, now - lastPublish) / 1000.0;
+            lastPublish = now;
+
+            Map<String, GroupIndex.GroupLoad> loads = discoveryService.getGroupIndex().getLoads();
+
+            // Un groupe configuré sans aucun serveur est justement celui qu'un autoscaler doit voir
+            Set<String> groups = new LinkedHashSet<>(configManager.getGroupsConfig().keySet());
+            groups.addAll(loads.keySet());
+            groups.addAll(admissionQueueService.getQueuedGroups());
+
+            String prefix = configManager.getDemandTopic() + ".";
+            for (String group : groups) {
+                GroupDemand demand = buildDemand(group, loads.get(group), elapsed, now);
+                natsService.publish(prefix + group, ProtobufSerializer.serializeGroupDemand(demand));
+            }
+        } catch (Exception e) {
+            logger.error("Erreur lors de la publication de la demande par groupe", e);
+        }
+    }
+
+    private GroupDemand buildDemand(String group, GroupIndex.GroupLoad load, double elapsed, long now) {
+        GroupActivityCounters activity = loadBalancingService.getGroupActivity();
+        long[] current = {activity.getLogins(group), activity.getRejected(group), activity.getFallbacks(group)};
+        long[] previous = lastCounters.put(group, current);
+        if (previous == null) {
+            previous = new long[3];
+        }
+
+        GroupDemand demand = new GroupDemand(proxyId, group);
+        if (load != null) {
+            demand.setServers(load.getMembers());
+            demand.setTotalSlots(load.getCapacity());
+            demand.setFreeSlots(load.getFreeSlots());
+            demand.setPlayers(load.getPlayers());
+        }
+        demand.setQueueDepth(admissionQueueService.getQueueSize(group));
+        demand.setLoginRate((current[0] - previous[0]) / elapsed);
+        demand.setRejectedRate((current[1] - previous[1]) / elapsed);
+        demand.setFallbackRate((current[2] - previous[2]) / elapsed);
+        demand.setTimestamp(now);
+
+        return demand;
+    }
+}
@@ -0,0 +1,196 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Index groupe → serveurs disponibles, maintenu par les événements de découverte.
+// Les écritures sont sérialisées et ne reconstruisent la liste d'un groupe que si l'appartenance
+// ou la disponibilité d'un serveur change ; les lectures renvoient la liste immuable publiée, sans copie.
+public class GroupIndex {
+    private final Map<String, List<ServerInfo>> availableByGroup = new ConcurrentHashMap<>();
+    private final Map<String, GroupLoad> loadByGroup = new ConcurrentHashMap<>();
+    private final List<MembershipListener> listeners = new CopyOnWriteArrayList<>();
+
+    // État côté écrivain, protégé par le moniteur de l'index
+    private final Map<String, Map<String, ServerInfo>> availableMembersByGroup = new HashMap<>();
+    private final Map<String, Map<String, ServerInfo>> membersByGroup = new HashMap<>();
+    private final Map<String, IndexedServer> indexedServers = new HashMap<>();
+
+    public List<ServerInfo> getServers(String groupName) {
+        return availableByGroup.getOrDefault(groupName, Collections.emptyList());
+    }
+
+    public Map<String, List<ServerInfo>> getServersByGroup() {
+        return Collections.unmodifiableMap(availableByGroup);
+    }
+
+    public GroupLoad getLoad(String groupName) {
+        return loadByGroup.get(groupName);
+    }
+
+    public Map<String, GroupLoad> getLoads() {
+        return Collections.unmodifiableMap(loadByGroup);
+    }
+
+    public synchronized void addListener(MembershipListener listener) {
+        listeners.add(listener);
+
+        // Rejouer les membres déjà connus pour que l'écouteur parte d'un état complet
+        membersByGroup.forEach((group, members) ->
+            members.values().forEach(serverInfo -> listener.onServerAdded(group, serverInfo)));
+    }
+
+    public synchronized void update(ServerInfo serverInfo) {
+        String serverName = serverInfo.getName();
+        List<String> groups = serverInfo.getGroups() != null ? serverInfo.getGroups() : Collections.emptyList();
+        boolean available = !serverInfo.isFull();
+        int players = serverInfo.getCurrentPlayers();
+        int capacity = serverInfo.getMaxPlayers();
+
+        IndexedServer indexed = indexedServers.get(serverName);
+
+        // Cas le plus fréquent : heartbeat sans changement de groupe ni de disponibilité
+        if (indexed != null && indexed.available == available && indexed.groups.equals(groups)) {
+            if (indexed.players != players || indexed.capacity != capacity) {
+                for (String group : groups) {
+                    loadByGroup.get(group).add(players - indexed.players, capacity - indexed.capacity);
+                }
+                indexed.players = players;
+                indexed.capacity = capacity;
+            }
+            return;
+        }
+
+        if (indexed != null) {
+            for (String group : indexed.groups) {
+                if (!groups.contains(group)) {
+                    removeAvailable(group, serverName);
+                    removeMember(group, serverName, indexed);
+                }
+            }
+        }
+
+        for (String group : groups) {
+            if (indexed == null || !indexed.groups.contains(group)) {
+                addMember(group, serverInfo, players, capacity);
+            } else {
+                loadByGroup.get(group).add(players - indexed.players, capacity - indexed.capacity);
+            }
+
+            if (available) {
+                Map<String, ServerInfo> members = availableMembersByGroup.computeIfAbsent(group, k -> new LinkedHashMap<>());
+                if (members.put(serverName, serverInfo) != serverInfo) {
+                    publishAvailable(group, members);
+                }
+            } else {
+                removeAvailable(group, serverName);
+            }
+        }
+
+        indexedServers.put(serverName, new IndexedServer(List.copyOf(groups), available, players, capacity));
+    }
+
+    public synchronized void remove(String serverName) {
+        IndexedServer indexed = indexedServers.remove(serverName);
+
+        if (indexed == null) return;
+
+        for (String group : indexed.groups) {
+            removeAvailable(group, serverName);
+            removeMember(group, serverName, indexed);
+        }
+    }
+
+    private void addMember(String group, ServerInfo serverInfo, int players, int capacity) {
+        membersByGroup.computeIfAbsent(group, k -> new HashMap<>()).put(serverInfo.getName(), serverInfo);
+
+        GroupLoad load = loadByGroup.computeIfAbsent(group, k -> new GroupLoad());
+        load.members++;
+        load.add(players, capacity);
+
+        for (MembershipListener listener : listeners) {
+            listener.onServerAdded(group, serverInfo);
+        }
+    }
+
+    private void removeMember(String group, String serverName, IndexedServer indexed) {
+        Map<String, ServerInfo> members = membersByGroup.get(group);
+        if (members == null || members.remove(serverName) == null) {
+            return;
+        }
+
+        if (members.isEmpty()) {
+            membersByGroup.remove(group);
+            loadByGroup.remove(group);
+        } else {
+            GroupLoad load = loadByGroup.get(group);
+            load.members--;
+            load.add(-indexed.players, -indexed.capacity);
+        }
+
+        for (MembershipListener listener : listeners) {
+            listener.onServerRemoved(group, serverName);
+        }
+    }
+
+    private void removeAvailable(String group, String serverName) {
+        Map<String, ServerInfo> members = availableMembersByGroup.get(group);
+        if (members != null && members.remove(serverName) != null) {
+            publishAvailable(group, members);
+        }
+    }
+
+    private void publishAvailable(String group, Map<String, ServerInfo> members) {
+        if (members.isEmpty()) {
+            availableMembersByGroup.remove(group);
+            availableByGroup.remove(group);
+        } else {
+            availableByGroup.put(group, Collections.unmodifiableList(new ArrayList<>(members.values())));
+        }
+    }
+
+    public interface MembershipListener {
+        void onServerAdded(String group, ServerInfo serverInfo);
+
+        void onServerRemoved(String group, String serverName);
+    }
+
+    // Charge agrégée d'un groupe, serveurs pleins compris
+    public static class GroupLoad {
+        private volatile int members;
+        private volatile int players;
+        private volatile int capacity;
+
+        private void add(int playersDelta, int capacityDelta) {
+            players += playersDelta;
+            capacity += capacityDelta;
+        }
+
+        public int getMembers() { return members; }
+        public int getPlayers() { return players; }
+        public int getCapacity() { return capacity; }
+        public int getFreeSlots() { return Math.max(0, capacity - players); }
+    }
+
+    private static class IndexedServer {
+        private final List<String> groups;
+        private final boolean available;
+        private int players;
+        private int capacity;
+
+        private IndexedServer(List<String> groups, boolean available, int players, int capacity) {
+            this.groups = groups;
+            this.available = available;
+            this.players = players;
+            this.capacity = capacity;
+        }
+    }
+}
@@ -3,14 +3,17 @@ package fr.nhsoul.dynamo.velocity.service;
 
 import fr.nhsoul.dynamo.common.model.LoadBalancingStrategy;
 import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager;
+import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager.FallbackTarget;
 import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager.GroupConfig;
+import fr.nhsoul.dynamo.velocity.metrics.GroupActivityCounters;
+import fr.nhsoul.dynamo.velocity.metrics.LatencyRecorder;
 import org.slf4j.Logger;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 public class LoadBalancingService {
     private final ServerDiscoveryService discoveryService;
@@ -18,6 +21,12 @@ public class LoadBalancingService {
     private final Logger logger;
     
     private final Map<String, AtomicInteger> roundRobinCounters = new ConcurrentHashMap<>();
+    private final Map<String, SmoothWeightedRoundRobin> weightedRoundRobins = new ConcurrentHashMap<>();
+    private final PendingConnectionTracker pendingConnections;
+    private final ConsistentHashRing hashRing = new ConsistentHashRing();
+    private final LatencyRecorder initialServerLatency = new LatencyRecorder();
+    private final GroupActivityCounters groupActivity = new GroupActivityCounters();
+    private final ServerAffinityCache affinity;
     private volatile boolean running = false;
     
     public LoadBalancingService(ServerDiscoveryService discoveryService, 
@@ -25,6 +34,12 @@ public class LoadBalancingService {
         this.discoveryService = discoveryService;
         this.configManager = configManager;
         this.logger = logger;
+        this.pendingConnections = new PendingConnectionTracker(configManager.getPendingConnectionTimeout() * 1000L);
+        this.affinity = new ServerAffinityCache(configManager.getAffinityMaxSize(),
+            Duration.ofMinutes(configManager.getAffinityTtl()));
+        
+        // L'anneau suit les ajouts et expirations de serveurs au lieu d'être reconstruit à chaque sélection
+        discoveryService.getGroupIndex().addListener(hashRing);
     }
     
     public void start() {
@@ -38,15 +53,105 @@ public class LoadBalancingService {
     }
     
     public Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectServer(String groupName) {
+        return selectServer(groupName, null);
+    }
+    
+    public Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectServer(String groupName, UUID playerId) {
+        return selectServer(groupName, playerId, Collections.emptySet());
+    }
+    
+    public Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectServer(String groupName, UUID playerId, Set<String> excludedServers) {
+        if (!running) {
+            return Optional.empty();
+        }
+        
+        Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selected = selectInGroup(groupName, playerId, excludedServers);
+        
+        if (selected.isEmpty()) {
+            groupActivity.recordRejected(groupName);
+            logger.warn("Aucun serveur disponible dans le groupe: {}", groupName);
+        }
+        
+        return selected;
+    }
+    
+    // Parcourt en une passe la chaîne de secours précompilée des groupes du serveur quitté
+    public Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectFallbackServer(String originalServerName, UUID playerId) {
+        return selectFallbackServer(originalServerName, playerId, excluding(originalServerName));
+    }
+    
+    // excludedServers : le serveur quitté et ceux qui ont déjà refusé une place au joueur
+    public Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectFallbackServer(String originalServerName, UUID playerId,
+                                                                                   Set<String> excludedServers) {
         if (!running) {
             return Optional.empty();
         }
         
+        // Un joueur passé récemment par un autre serveur y retourne en priorité
+        Optional<fr.nhsoul.dynamo.common.model.ServerInfo> previous = selectAffinityServer(playerId, excludedServers);
+        if (previous.isPresent()) {
+            return previous;
+        }
+        
+        fr.nhsoul.dynamo.common.model.ServerInfo originalServer = discoveryService.getServerInfo(originalServerName);
+        List<String> originalGroups = originalServer != null && originalServer.getGroups() != null
+            ? originalServer.getGroups() : Collections.emptyList();
+        
+        Set<String> visited = new HashSet<>();
+        
+        if (originalGroups.isEmpty()) {
+            return walkFallbackChain(configManager.getDefaultFallbackChain(), excludedServers, originalGroups, playerId, visited);
+        }
+        
+        for (String group : originalGroups) {
+            Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selected = walkFallbackChain(
+                configManager.getFallbackChain(group), excludedServers, originalGroups, playerId, visited);
+            if (selected.isPresent()) {
+                return selected;
+            }
+        }
+        
+        return Optional.empty();
+    }
+    
+    private Optional<fr.nhsoul.dynamo.common.model.ServerInfo> walkFallbackChain(
+            List<FallbackTarget> chain, Set<String> excludedServers, List<String> originalGroups,
+            UUID playerId, Set<String> visited) {
+        
+        for (int i = 0; i < chain.size(); i++) {
+            FallbackTarget target = chain.get(i);
+            
+            // Une étape déjà essayée par la chaîne d'un autre groupe ne l'est pas de nouveau
+            if (!visited.add((target.isServer() ? "server:" : "group:") + target.getName())) {
+                continue;
+            }
+            
+            if (target.isServer()) {
+                fr.nhsoul.dynamo.common.model.ServerInfo serverInfo = discoveryService.getServerInfo(target.getName());
+                if (serverInfo != null && !excludedServers.contains(target.getName()) && isServerHealthy(serverInfo)) {
+                    pendingConnections.reserve(serverInfo.getName(), playerId);
+                    return Optional.of(serverInfo);
+                }
+                continue;
+            }
+            
+            Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selected = selectInGroup(target.getName(), playerId, excludedServers);
+            if (selected.isPresent()) {
+                if (!originalGroups.contains(target.getName())) {
+                    groupActivity.recordFallback(target.getName());
+                }
+                return selected;
+            }
+        }
+        
+        return Optional.empty();
+    }
+    
+    private Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectInGroup(String groupName, UUID playerId, Set<String> excludedServers) {
         // Obtenir les serveurs du groupe
-        List<fr.nhsoul.dynamo.common.model.ServerInfo> groupServers = getServersInGroup(groupName);
+        List<fr.nhsoul.dynamo.common.model.ServerInfo> groupServers = withoutServers(getServersInGroup(groupName), excludedServers);
         
         if (groupServers.isEmpty()) {
-            logger.warn("Aucun serveur disponible dans le groupe: {}", groupName);
             return Optional.empty();
         }
         
@@ -56,39 +161,137 @@ public class LoadBalancingService {
             groupConfig.getStrategy() : LoadBalancingStrategy.ROUND_ROBIN;
         
         // Sélectionner un serveur selon la stratégie
-        return selectServerByStrategy(groupServers, strategy, groupName);
+        Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selected = selectServerByStrategy(groupServers, strategy, groupName, playerId);
+        
+        // Serveur suspect ou expiré mais encore indexé : rejouer la stratégie sur les seuls serveurs sains
+        if (selected.isPresent() && !isServerHealthy(selected.get())) {
+            List<fr.nhsoul.dynamo.common.model.ServerInfo> healthy = new ArrayList<>();
+            for (int i = 0; i < groupServers.size(); i++) {
+                if (isServerHealthy(groupServers.get(i))) {
+                    healthy.add(groupServers.get(i));
+                }
+            }
+            
+            selected = healthy.isEmpty() ? Optional.empty() : selectServerByStrategy(healthy, strategy, groupName, playerId);
+            if (selected.isPresent() && !isServerHealthy(selected.get())) {
+                selected = Optional.of(healthy.get(0));
+            }
+        }
+        
+        // Compter le joueur comme en route tant que le serveur ne l'a pas vu arriver
+        selected.ifPresent(serverInfo -> pendingConnections.reserve(serverInfo.getName(), playerId));
+        
+        return selected;
+    }
+    
+    private static Set<String> excluding(String serverName) {
+        return serverName != null ? Collections.singleton(serverName) : Collections.emptySet();
+    }
+    
+    private static List<fr.nhsoul.dynamo.common.model.ServerInfo> withoutServers(
+            List<fr.nhsoul.dynamo.common.model.ServerInfo> servers, Set<String> serverNames) {
+        
+        if (serverNames.isEmpty()) return servers;
+        
+        for (int i = 0; i < servers.size(); i++) {
+            if (serverNames.contains(servers.get(i).getName())) {
+                // Copie seulement si un serveur exclu est encore publié dans le groupe
+                List<fr.nhsoul.dynamo.common.model.ServerInfo> filtered = new ArrayList<>(i);
+                filtered.addAll(servers.subList(0, i));
+                for (int j = i + 1; j < servers.size(); j++) {
+                    if (!serverNames.contains(servers.get(j).getName())) {
+                        filtered.add(servers.get(j));
+                    }
+                }
+                return filtered;
+            }
+        }
+        
+        return servers;
+    }
+    
+    // Dernier serveur du joueur s'il est encore sain et a de la place, connexions en cours comprises
+    public Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectAffinityServer(UUID playerId, String excludedServer) {
+        return selectAffinityServer(playerId, excluding(excludedServer));
+    }
+    
+    private Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectAffinityServer(UUID playerId, Set<String> excludedServers) {
+        if (!running || playerId == null || configManager.getAffinityTtl() <= 0) {
+            return Optional.empty();
+        }
+        
+        String lastServer = affinity.getLastServer(playerId);
+        if (lastServer == null || excludedServers.contains(lastServer)) {
+            return Optional.empty();
+        }
+        
+        fr.nhsoul.dynamo.common.model.ServerInfo serverInfo = discoveryService.getServerInfo(lastServer);
+        if (serverInfo == null || !isServerHealthy(serverInfo)
+                || serverInfo.getCurrentPlayers() + pendingConnections.getPending(lastServer) >= serverInfo.getMaxPlayers()) {
+            return Optional.empty();
+        }
+        
+        pendingConnections.reserve(lastServer, playerId);
+        return Optional.of(serverInfo);
+    }
+    
+    public ServerAffinityCache getAffinity() {
+        return affinity;
     }
     
     public Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectDefaultServer() {
+        return selectDefaultServer(null);
+    }
+    
+    public Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectDefaultServer(UUID playerId) {
         String defaultGroup = configManager.getDefaultGroup();
-        return selectServer(defaultGroup);
+        return selectServer(defaultGroup, playerId);
+    }
+    
+    public LatencyRecorder getInitialServerLatency() {
+        return initialServerLatency;
+    }
+    
+    public GroupActivityCounters getGroupActivity() {
+        return groupActivity;
+    }
+    
+    public void reserveConnection(String serverName, UUID playerId) {
+        pendingConnections.reserve(serverName, playerId);
+    }
+    
+    public void releaseConnection(String serverName, UUID playerId) {
+        pendingConnections.release(serverName, playerId);
+    }
+    
+    // Seule la réservation de ce joueur est libérée : une arrivée hors de Dynamo n'en consomme aucune
+    public void onPlayerConnected(UUID playerId, String serverName) {
+        pendingConnections.release(serverName, playerId);
+        affinity.remember(playerId, serverName);
+    }
+    
+    public void onPlayerDisconnected(UUID playerId) {
+        pendingConnections.releaseAll(playerId);
+    }
+    
+    public int getPendingConnections(String serverName) {
+        return pendingConnections.getPending(serverName);
     }
     
     public List<fr.nhsoul.dynamo.common.model.ServerInfo> getServersInGroup(String groupName) {
-        return discoveryService.getDiscoveredServers().values().stream()
-            .filter(serverInfo -> serverInfo.getGroups().contains(groupName))
-            .filter(this::isServerHealthy)
-            .collect(Collectors.toList());
+        // Liste immuable maintenue par l'index de découverte : aucune copie ni parcours global
+        return discoveryService.getGroupIndex().getServers(groupName);
     }
     
     public Map<String, List<fr.nhsoul.dynamo.common.model.ServerInfo>> getServersByGroup() {
-        Map<String, List<fr.nhsoul.dynamo.common.model.ServerInfo>> result = new HashMap<>();
-        
-        for (fr.nhsoul.dynamo.common.model.ServerInfo serverInfo : discoveryService.getDiscoveredServers().values()) {
-            if (isServerHealthy(serverInfo)) {
-                for (String group : serverInfo.getGroups()) {
-                    result.computeIfAbsent(group, k -> new ArrayList<>()).add(serverInfo);
-                }
-            }
-        }
-        
-        return result;
+        return discoveryService.getGroupIndex().getServersByGroup();
     }
     
     private Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectServerByStrategy(
             List<fr.nhsoul.dynamo.common.model.ServerInfo> servers, 
             LoadBalancingStrategy strategy, 
-            String groupName) {
+            String groupName,
+            UUID playerId) {
         
         switch (strategy) {
             case ROUND_ROBIN:
@@ -103,6 +306,20 @@ public class LoadBalancingService {
             case FIRST_AVAILABLE:
                 return servers.stream().findFirst();
                 
+            case POWER_OF_TWO_CHOICES:
+                return selectPowerOfTwoChoices(servers);
+                
+            case CONSISTENT_HASH:
+                return selectConsistentHash(servers, groupName, playerId);
+                
+            case TICK_HEALTH:
+                return selectTickHealth(servers);
+                
+            case WEIGHTED_ROUND_ROBIN:
+                return Optional.ofNullable(weightedRoundRobins
+                    .computeIfAbsent(groupName, k -> new SmoothWeightedRoundRobin())
+                    .select(servers, getServersInGroup(groupName)));
+                
             default:
                 logger.warn("Stratégie de load balancing non reconnue: {}", strategy);
                 return selectRoundRobin(servers, groupName);
@@ -115,7 +332,8 @@ public class LoadBalancingService {
         if (servers.isEmpty()) return Optional.empty();
         
         AtomicInteger counter = roundRobinCounters.computeIfAbsent(groupName, k -> new AtomicInteger(0));
-        int index = counter.getAndIncrement() % servers.size();
+        // floorMod : l'index reste positif même après le débordement du compteur
+        int index = Math.floorMod(counter.getAndIncrement(), servers.size());
         
         return Optional.of(servers.get(index));
     }
@@ -123,8 +341,105 @@ public class LoadBalancingService {
     private Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectLeastPlayers(
             List<fr.nhsoul.dynamo.common.model.ServerInfo> servers) {
         
-        return servers.stream()
-            .min(Comparator.comparingDouble(this::getPlayerRatio));
+        fr.nhsoul.dynamo.common.model.ServerInfo best = null;
+        double bestRatio = Double.MAX_VALUE;
+        
+        for (int i = 0; i < servers.size(); i++) {
+            fr.nhsoul.dynamo.common.model.ServerInfo serverInfo = servers.get(i);
+            double ratio = getPlayerRatio(serverInfo);
+            if (ratio < bestRatio) {
+                best = serverInfo;
+                bestRatio = ratio;
+            }
+        }
+        
+        return Optional.ofNullable(best);
+    }
+    
+    private Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectPowerOfTwoChoices(
+            List<fr.nhsoul.dynamo.common.model.ServerInfo> servers) {
+        
+        int size = servers.size();
+        if (size == 0) return Optional.empty();
+        if (size == 1) return Optional.of(servers.get(0));
+        
+        // Tirer deux candidats distincts et garder le moins chargé, connexions en cours comprises
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        
+        fr.nhsoul.dynamo.common.model.ServerInfo a = servers.get(first);
+        fr.nhsoul.dynamo.common.model.ServerInfo b = servers.get(second);
+        
+        return Optional.of(getEffectiveLoad(a) <= getEffectiveLoad(b) ? a : b);
+    }
+    
+    private Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectConsistentHash(
+            List<fr.nhsoul.dynamo.common.model.ServerInfo> servers, String groupName, UUID playerId) {
+        
+        if (playerId == null) {
+            return selectLeastPlayers(servers);
+        }
+        
+        // Charge bornée : aucun serveur ne dépasse (1 + ε) fois la moyenne du groupe, joueur entrant compris
+        GroupIndex.GroupLoad load = discoveryService.getGroupIndex().getLoad(groupName);
+        int members = load != null ? Math.max(1, load.getMembers()) : servers.size();
+        int players = load != null ? load.getPlayers() : 0;
+        double capacity = Math.ceil((players + 1) * (1 + configManager.getHashLoadOverflow() / 100.0) / members);
+        
+        // L'anneau couvre tout le groupe : se limiter aux candidats reçus (serveurs exclus, déjà refusés ou malsains retirés)
+        Set<String> candidates = null;
+        if (servers != getServersInGroup(groupName)) {
+            candidates = new HashSet<>(servers.size() * 2);
+            for (int i = 0; i < servers.size(); i++) {
+                candidates.add(servers.get(i).getName());
+            }
+        }
+        Set<String> allowed = candidates;
+        
+        fr.nhsoul.dynamo.common.model.ServerInfo selected = hashRing.select(groupName, playerId, serverInfo ->
+            (allowed == null || allowed.contains(serverInfo.getName()))
+                && isServerHealthy(serverInfo)
+                && serverInfo.getCurrentPlayers() + pendingConnections.getPending(serverInfo.getName()) < capacity);
+        
+        return selected != null ? Optional.of(selected) : selectLeastPlayers(servers);
+    }
+    
+    private Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectTickHealth(
+            List<fr.nhsoul.dynamo.common.model.ServerInfo> servers) {
+        
+        TickHealthTracker tickHealth = discoveryService.getTickHealth();
+        double budget = Math.max(1, configManager.getMsptBudget());
+        
+        fr.nhsoul.dynamo.common.model.ServerInfo best = null;
+        double bestScore = Double.MAX_VALUE;
+        fr.nhsoul.dynamo.common.model.ServerInfo leastLagging = null;
+        double leastMspt = Double.MAX_VALUE;
+        
+        for (int i = 0; i < servers.size(); i++) {
+            fr.nhsoul.dynamo.common.model.ServerInfo serverInfo = servers.get(i);
+            double mspt = tickHealth.getSmoothedMspt(serverInfo.getName());
+            
+            if (mspt < leastMspt) {
+                leastMspt = mspt;
+                leastLagging = serverInfo;
+            }
+            
+            // Un serveur au-delà du budget de tick est écarté, les autres sont pénalisés selon leur marge
+            if (mspt > budget) continue;
+            
+            double score = getEffectiveLoad(serverInfo) + mspt / budget;
+            if (score < bestScore) {
+                bestScore = score;
+                best = serverInfo;
+            }
+        }
+        
+        // Si tout le groupe est en retard, préférer le moins en retard plutôt que de refuser le joueur
+        return Optional.ofNullable(best != null ? best : leastLagging);
     }
     
     private Optional<fr.nhsoul.dynamo.common.model.ServerInfo> selectRandom(
@@ -136,7 +451,7 @@ public class LoadBalancingService {
         return Optional.of(servers.get(randomIndex));
     }
     
-    private boolean isServerHealthy(fr.nhsoul.dynamo.common.model.ServerInfo serverInfo) {
+    public boolean isServerHealthy(fr.nhsoul.dynamo.common.model.ServerInfo serverInfo) {
         // Vérifier si le serveur n'est pas expiré
         long timeoutMs = configManager.getServerTimeout() * 1000L;
         
@@ -144,6 +459,11 @@ public class LoadBalancingService {
             return false;
         }
         
+        // Écarter un serveur dont le silence est déjà suspect, bien avant son expiration
+        if (discoveryService.getFailureDetector().isSuspect(serverInfo.getName())) {
+            return false;
+        }
+        
         // Vérifier si le serveur n'est pas plein
         if (serverInfo.getCurrentPlayers() >= serverInfo.getMaxPlayers()) {
             return false;
@@ -159,6 +479,14 @@ public class LoadBalancingService {
         return (double) serverInfo.getCurrentPlayers() / serverInfo.getMaxPlayers();
     }
     
+    private double getEffectiveLoad(fr.nhsoul.dynamo.common.model.ServerInfo serverInfo) {
+        if (serverInfo.getMaxPlayers() == 0) {
+            return 0.0;
+        }
+        int players = serverInfo.getCurrentPlayers() + pendingConnections.getPending(serverInfo.getName());
+        return (double) players / serverInfo.getMaxPlayers();
+    }
+    
     public boolean shouldMigrate(fr.nhsoul.dynamo.common.model.ServerInfo serverInfo) {
         if (!configManager.isAutoMigrate()) {
             return false;
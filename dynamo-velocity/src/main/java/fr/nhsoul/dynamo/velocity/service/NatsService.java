@@ -6,16 +6,29 @@ import fr.nhsoul.dynamo.common.model.ServerEvent;
 import fr.nhsoul.dynamo.common.util.ProtobufSerializer;
 import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager;
 import io.nats.client.*;
+import io.nats.client.api.KeyValueConfiguration;
+import io.nats.client.api.StorageType;
 import org.slf4j.Logger;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 public class NatsService {
     private final VelocityConfigManager configManager;
     private final Logger logger;
-    private Connection natsConnection;
+    private volatile Connection natsConnection;
     private volatile boolean running = false;
+    // Actions en attente de la première connexion, quand NATS était injoignable au démarrage
+    private final List<Runnable> onConnected = new ArrayList<>();
+    private ScheduledExecutorService connectRetry;
 
     public NatsService(VelocityConfigManager configManager, Logger logger) {
         this.configManager = configManager;
@@ -23,6 +36,52 @@ public class NatsService {
     }
 
     public boolean start() {
+        running = true;
+        if (connect(false)) {
+            return true;
+        }
+
+        // Avec la copie locale, le proxy démarre sans NATS : la première connexion est retentée en arrière-plan,
+        // la bibliothèque ne reconnectant qu'une connexion déjà établie
+        if (configManager.isSnapshotEnabled()) {
+            retryInitialConnect();
+        } else {
+            running = false;
+        }
+        return false;
+    }
+
+    public void stop() {
+        running = false;
+
+        if (connectRetry != null) {
+            connectRetry.shutdownNow();
+        }
+
+        if (natsConnection != null) {
+            try {
+                natsConnection.close();
+                logger.info("Connexion NATS fermée.");
+            } catch (InterruptedException e) {
+                logger.warn("Interruption lors de la fermeture de NATS", e);
+            }
+        }
+    }
+
+    // Exécute l'action à la première connexion : tout de suite si elle est déjà établie,
+    // sinon sur le thread de reconnexion quand NATS devient joignable
+    public void whenConnected(Runnable action) {
+        synchronized (onConnected) {
+            if (natsConnection == null) {
+                onConnected.add(action);
+                return;
+            }
+        }
+
+        action.run();
+    }
+
+    private boolean connect(boolean retry) {
         try {
             NatsConfig natsConfig = configManager.getNatsConfig();
 
@@ -35,47 +94,160 @@ public class NatsService {
                     //.errorListener(this::handleErrorEvent)
                     .build();
 
-            natsConnection = Nats.connect(options);
-            running = true;
+            Connection connection = Nats.connect(options);
+            if (!running) {
+                // Arrêté pendant la tentative en arrière-plan
+                connection.close();
+                return false;
+            }
+
+            List<Runnable> actions;
+            synchronized (onConnected) {
+                natsConnection = connection;
+                actions = new ArrayList<>(onConnected);
+                onConnected.clear();
+            }
 
             logger.info("Connexion NATS établie avec succès !");
+            actions.forEach(this::runConnectedAction);
             return true;
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         } catch (Exception e) {
-            logger.error("Erreur lors de la connexion à NATS", e);
+            if (retry) {
+                logger.debug("NATS toujours injoignable: {}", e.getMessage());
+            } else {
+                logger.error("Erreur lors de la connexion à NATS", e);
+            }
             return false;
         }
     }
 
-    public void stop() {
-        running = false;
+    private void retryInitialConnect() {
+        long wait = Math.max(100, configManager.getNatsConfig().getReconnectTimeout());
+        connectRetry = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dynamo-nats-connect");
+            thread.setDaemon(true);
+            return thread;
+        });
 
-        if (natsConnection != null) {
-            try {
-                natsConnection.close();
-                logger.info("Connexion NATS fermée.");
-            } catch (InterruptedException e) {
-                logger.warn("Interruption lors de la fermeture de NATS", e);
+        connectRetry.scheduleWithFixedDelay(() -> {
+            if (running && natsConnection == null && connect(true)) {
+                connectRetry.shutdown();
             }
+        }, wait, wait, TimeUnit.MILLISECONDS);
+
+        logger.warn("NATS injoignable : nouvelle tentative toutes les {} ms", wait);
+    }
+
+    private void runConnectedAction(Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            logger.error("Erreur lors du démarrage d'un service après la connexion NATS", e);
         }
     }
 
-    public Dispatcher subscribe(String subject, Consumer<ServerEvent> handler) {
+    // Remet les octets bruts : le décodage se fait hors du thread du dispatcher
+    public Dispatcher subscribe(String subject, Consumer<byte[]> handler) {
         if (!running || natsConnection == null) {
             throw new IllegalStateException("Service NATS non démarré");
         }
 
         return natsConnection.createDispatcher(message -> {
             try {
-                byte[] data = message.getData();
-                ServerEvent event = ProtobufSerializer.deserializeServerEvent(data);
-                handler.accept(event);
+                handler.accept(message.getData());
             } catch (Exception e) {
                 logger.error("Erreur lors du traitement du message NATS", e);
             }
         }).subscribe(subject);
     }
 
+    public void publish(String subject, byte[] data) {
+        if (!running || natsConnection == null) {
+            throw new IllegalStateException("Service NATS non démarré");
+        }
+
+        natsConnection.publish(subject, data);
+    }
+
+    // Requête à réponse unique ; échoue si personne n'écoute le sujet ou si la réponse n'arrive pas à temps
+    public CompletableFuture<byte[]> request(String subject, byte[] data, Duration timeout) {
+        if (!running || natsConnection == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Service NATS non démarré"));
+        }
+
+        return natsConnection.requestWithTimeout(subject, data, timeout).thenApply(Message::getData);
+    }
+
+    // Publie une requête et collecte les réponses, traitées en parallèle de l'attente. Le nombre de répondants
+    // étant inconnu, l'attente s'arrête dès qu'aucune réponse n'est arrivée pendant quietPeriod, au plus tard à l'échéance.
+    public int collectReplies(String subject, byte[] data, Duration deadline, Duration quietPeriod,
+                              Consumer<ServerEvent> handler) throws InterruptedException {
+        if (!running || natsConnection == null) {
+            throw new IllegalStateException("Service NATS non démarré");
+        }
+
+        String inbox = natsConnection.createInbox();
+        AtomicInteger replies = new AtomicInteger();
+        AtomicLong lastReply = new AtomicLong();
+
+        Dispatcher dispatcher = natsConnection.createDispatcher(message -> {
+            lastReply.set(System.nanoTime());
+            try {
+                handler.accept(ProtobufSerializer.deserializeServerEvent(message.getData()));
+                replies.incrementAndGet();
+            } catch (Exception e) {
+                logger.error("Erreur lors du traitement d'une réponse NATS", e);
+            }
+        });
+        dispatcher.subscribe(inbox);
+
+        try {
+            long start = System.nanoTime();
+            lastReply.set(start);
+            natsConnection.publish(subject, inbox, data);
+
+            // Dormir jusqu'à la plus proche des deux fins possibles, puis réévaluer
+            while (true) {
+                long now = System.nanoTime();
+                long wait = Math.min(deadline.toNanos() - (now - start), quietPeriod.toNanos() - (now - lastReply.get()));
+                if (wait <= 0) break;
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        } finally {
+            natsConnection.closeDispatcher(dispatcher);
+        }
+
+        return replies.get();
+    }
+
+    // Ouvre le bucket KV du registre, en le créant au premier usage
+    public KeyValue openKeyValue(String bucket, Duration ttl, int history) throws Exception {
+        if (!running || natsConnection == null) {
+            throw new IllegalStateException("Service NATS non démarré");
+        }
+
+        KeyValueManagement management = natsConnection.keyValueManagement();
+        if (!management.getBucketNames().contains(bucket)) {
+            try {
+                management.create(KeyValueConfiguration.builder()
+                        .name(bucket)
+                        .ttl(ttl)
+                        .maxHistoryPerKey(Math.max(1, history))
+                        .storageType(StorageType.File)
+                        .build());
+            } catch (JetStreamApiException e) {
+                // Créé entre-temps par un autre serveur ou proxy : on l'utilise tel quel
+                if (!management.getBucketNames().contains(bucket)) throw e;
+            }
+        }
+
+        return natsConnection.keyValue(bucket);
+    }
+
     public boolean isConnected() {
         return natsConnection != null && natsConnection.getStatus() == Connection.Status.CONNECTED;
     }
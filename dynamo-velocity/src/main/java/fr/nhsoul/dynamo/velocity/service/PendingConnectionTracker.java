@@ -0,0 +1,77 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Connexions envoyées vers un serveur mais pas encore visibles dans ses heartbeats.
+// Chaque réservation appartient à un joueur : seule l'arrivée de ce joueur la libère, sinon elle expire
+// après le délai configuré. Un joueur arrivé sans réservation (forced host, /server, autre proxy) n'en consomme aucune.
+public class PendingConnectionTracker {
+    private final Map<String, Pending> pendingByServer = new ConcurrentHashMap<>();
+    private final long timeoutMs;
+
+    public PendingConnectionTracker(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    // Sans joueur connu, la réservation est anonyme : elle ne fait qu'expirer
+    public void reserve(String serverName, UUID playerId) {
+        UUID owner = playerId != null ? playerId : UUID.randomUUID();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        Pending pending = pendingByServer.computeIfAbsent(serverName, k -> new Pending());
+        pending.byPlayer.put(owner, deadline);
+        pending.deadlines.add(new Deadline(owner, deadline));
+    }
+
+    public void release(String serverName, UUID playerId) {
+        Pending pending = pendingByServer.get(serverName);
+        if (pending != null && playerId != null) {
+            pending.byPlayer.remove(playerId);
+        }
+    }
+
+    // Joueur déconnecté : il n'arrivera plus nulle part
+    public void releaseAll(UUID playerId) {
+        for (Pending pending : pendingByServer.values()) {
+            pending.byPlayer.remove(playerId);
+        }
+    }
+
+    public int getPending(String serverName) {
+        Pending pending = pendingByServer.get(serverName);
+        if (pending == null) {
+            return 0;
+        }
+
+        // Les échéances sont ajoutées dans l'ordre : il suffit de purger la tête de file.
+        // Une réservation libérée ou renouvelée entre-temps ne correspond plus à l'échéance et reste en place
+        long now = System.currentTimeMillis();
+        Deadline head;
+        while ((head = pending.deadlines.peek()) != null && head.deadline <= now) {
+            if (pending.deadlines.poll() != null) {
+                pending.byPlayer.remove(head.playerId, head.deadline);
+            }
+        }
+
+        return pending.byPlayer.size();
+    }
+
+    private static class Pending {
+        private final Map<UUID, Long> byPlayer = new ConcurrentHashMap<>();
+        private final Queue<Deadline> deadlines = new ConcurrentLinkedQueue<>();
+    }
+
+    private static class Deadline {
+        private final UUID playerId;
+        private final long deadline;
+
+        private Deadline(UUID playerId, long deadline) {
+            this.playerId = playerId;
+            this.deadline = deadline;
+        }
+    }
+}
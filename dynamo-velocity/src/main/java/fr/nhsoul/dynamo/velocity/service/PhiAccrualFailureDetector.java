@@ -0,0 +1,95 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Détecteur de défaillance « phi accrual » par serveur (Hayashibara et al.).
+// Phi mesure à quel point le silence actuel est improbable au vu des intervalles entre heartbeats déjà observés :
+// un serveur habituellement régulier devient suspect en quelques secondes, un serveur irrégulier a plus de marge.
+public class PhiAccrualFailureDetector {
+    private static final int WINDOW_SIZE = 100;
+
+    private final Map<String, History> historyByServer = new ConcurrentHashMap<>();
+    private final double threshold;
+    private final double minStdDevMs;
+
+    public PhiAccrualFailureDetector(double threshold, long minStdDevMs) {
+        this.threshold = threshold;
+        this.minStdDevMs = Math.max(1, minStdDevMs);
+    }
+
+    public void heartbeat(String serverName, long now) {
+        historyByServer.computeIfAbsent(serverName, k -> new History()).heartbeat(now);
+    }
+
+    public double getPhi(String serverName, long now) {
+        History history = historyByServer.get(serverName);
+        return history != null ? history.phi(now, minStdDevMs) : 0.0;
+    }
+
+    public boolean isSuspect(String serverName) {
+        return getPhi(serverName, System.currentTimeMillis()) >= threshold;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public void remove(String serverName) {
+        historyByServer.remove(serverName);
+    }
+
+    private static class History {
+        private final long[] intervals = new long[WINDOW_SIZE];
+        private int count;
+        private int next;
+        private long sum;
+        private long sumOfSquares;
+        private volatile long lastHeartbeat;
+        private volatile double mean;
+        private volatile double stdDev;
+
+        private synchronized void heartbeat(long now) {
+            // Plusieurs décodeurs peuvent livrer les arrivées dans le désordre : ne jamais reculer
+            long last = lastHeartbeat;
+            if (now <= last) return;
+            lastHeartbeat = now;
+            if (last == 0) return;
+
+            long interval = now - last;
+            if (count == WINDOW_SIZE) {
+                long evicted = intervals[next];
+                sum -= evicted;
+                sumOfSquares -= evicted * evicted;
+            } else {
+                count++;
+            }
+            intervals[next] = interval;
+            next = (next + 1) % WINDOW_SIZE;
+            sum += interval;
+            sumOfSquares += interval * interval;
+
+            double m = (double) sum / count;
+            mean = m;
+            stdDev = Math.sqrt(Math.max(0.0, (double) sumOfSquares / count - m * m));
+        }
+
+        private double phi(long now, double minStdDevMs) {
+            long last = lastHeartbeat;
+            double m = mean;
+            // Pas encore d'intervalle observé : l'expiration fixe reste seule juge
+            if (last == 0 || m == 0) return 0.0;
+
+            double elapsed = Math.max(0, now - last);
+            double sd = Math.max(stdDev, minStdDevMs);
+
+            // Approximation logistique de la loi normale cumulée, numériquement stable dans la queue
+            double y = (elapsed - m) / sd;
+            double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+            if (elapsed > m) {
+                return -Math.log10(e / (1.0 + e));
+            }
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.command.CommandExecuteEvent;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.player.PlayerChatEvent;
+import com.velocitypowered.api.event.player.ServerConnectedEvent;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Rééquilibrage en tâche de fond : planifie des déplacements depuis les serveurs au-delà du seuil
+// de migration vers les serveurs moins chargés du même groupe, puis les exécute par lots limités.
+public class RebalancingService {
+    private static final String EXEMPT_PERMISSION = "dynamo.migration.exempt";
+
+    private final ProxyServer proxyServer;
+    private final ServerDiscoveryService discoveryService;
+    private final LoadBalancingService loadBalancingService;
+    private final SlotReservationService slotReservationService;
+    private final VelocityConfigManager configManager;
+    private final Logger logger;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final Map<UUID, Long> lastActivity = new ConcurrentHashMap<>();
+    // Joueurs dont le transfert est en cours, avec l'échéance au-delà de laquelle il est considéré perdu
+    private final Map<UUID, Long> inFlight = new ConcurrentHashMap<>();
+    private volatile Queue<Move> plannedMoves = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService scheduler;
+
+    public RebalancingService(ProxyServer proxyServer, ServerDiscoveryService discoveryService,
+                              LoadBalancingService loadBalancingService, SlotReservationService slotReservationService,
+                              VelocityConfigManager configManager, Logger logger) {
+        this.proxyServer = proxyServer;
+        this.discoveryService = discoveryService;
+        this.loadBalancingService = loadBalancingService;
+        this.slotReservationService = slotReservationService;
+        this.configManager = configManager;
+        this.logger = logger;
+    }
+
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+
+            int interval = Math.max(1, configManager.getMigrationInterval());
+            scheduler.scheduleWithFixedDelay(this::planMigrations, interval, interval, TimeUnit.SECONDS);
+            scheduler.scheduleAtFixedRate(this::executeMoves, 1, 1, TimeUnit.SECONDS);
+
+            logger.info("Service de rééquilibrage démarré.");
+        }
+    }
+
+    public void stop() {
+        if (running.compareAndSet(true, false)) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+
+            plannedMoves.clear();
+            inFlight.clear();
+            logger.info("Service de rééquilibrage arrêté.");
+        }
+    }
+
+    private void planMigrations() {
+        if (!running.get()) return;
+
+        try {
+            if (!configManager.isAutoMigrate()) {
+                plannedMoves = new ConcurrentLinkedQueue<>();
+                return;
+            }
+
+            plannedMoves = computePlan(takeSnapshot());
+        } catch (Exception e) {
+            logger.error("Erreur lors de la planification des migrations", e);
+        }
+    }
+
+    private Map<String, ServerInfo> takeSnapshot() {
+        // Copier l'état une seule fois : tout le plan est calculé sur la même vue, sans effet des heartbeats en cours
+        Map<String, ServerInfo> snapshot = new LinkedHashMap<>();
+
+        for (ServerInfo serverInfo : discoveryService.getDiscoveredServers().values()) {
+            ServerInfo copy = new ServerInfo();
+            copy.setName(serverInfo.getName());
+            copy.updateFrom(serverInfo);
+            snapshot.put(copy.getName(), copy);
+        }
+
+        return snapshot;
+    }
+
+    private Queue<Move> computePlan(Map<String, ServerInfo> snapshot) {
+        int lowWatermark = configManager.getMigrationThreshold() - configManager.getMigrationHysteresis();
+
+        // Les joueurs déjà en route (connexions initiales, migrations précédentes) comptent dans la charge projetée
+        Map<String, Integer> projected = new HashMap<>();
+        snapshot.values().forEach(serverInfo -> projected.put(serverInfo.getName(),
+            serverInfo.getCurrentPlayers() + loadBalancingService.getPendingConnections(serverInfo.getName())));
+
+        List<ServerInfo> hotServers = new ArrayList<>();
+        for (ServerInfo serverInfo : snapshot.values()) {
+            if (loadBalancingService.shouldMigrate(serverInfo)) {
+                hotServers.add(serverInfo);
+            }
+        }
+        hotServers.sort(Comparator.comparingDouble((ServerInfo s) -> ratio(s, projected)).reversed());
+
+        Queue<Move> plan = new ConcurrentLinkedQueue<>();
+        int totalMoves = 0;
+
+        for (ServerInfo source : hotServers) {
+            // Vider le serveur jusqu'au bas de la bande d'hystérésis, pas seulement sous le seuil
+            int excess = projected.get(source.getName()) - capacityAt(source, lowWatermark);
+
+            for (String group : source.getGroups()) {
+                if (excess <= 0) break;
+
+                PriorityQueue<ServerInfo> targets = new PriorityQueue<>(
+                    Comparator.comparingDouble((ServerInfo s) -> ratio(s, projected)));
+                for (ServerInfo candidate : snapshot.values()) {
+                    // Jamais vers un serveur suspect ou expiré : il ne doit pas recevoir une vague de joueurs
+                    if (candidate != source && candidate.getGroups().contains(group)
+                            && loadBalancingService.isServerHealthy(candidate)
+                            && projected.get(candidate.getName()) < capacityAt(candidate, lowWatermark)) {
+                        targets.add(candidate);
+                    }
+                }
+
+                Map<String, Integer> movesToTarget = new LinkedHashMap<>();
+                while (excess > 0 && !targets.isEmpty()) {
+                    ServerInfo target = targets.poll();
+                    projected.merge(target.getName(), 1, Integer::sum);
+                    projected.merge(source.getName(), -1, Integer::sum);
+                    movesToTarget.merge(target.getName(), 1, Integer::sum);
+                    excess--;
+
+                    // Les cibles ne dépassent jamais le bas de la bande : pas d'aller-retour au plan suivant
+                    if (projected.get(target.getName()) < capacityAt(target, lowWatermark)) {
+                        targets.add(target);
+                    }
+                }
+
+                for (Map.Entry<String, Integer> entry : movesToTarget.entrySet()) {
+                    plan.add(new Move(source.getName(), entry.getKey(), entry.getValue()));
+                    totalMoves += entry.getValue();
+                }
+            }
+        }
+
+        if (totalMoves > 0) {
+            logger.info("Rééquilibrage planifié: {} joueurs à déplacer depuis {} serveurs", totalMoves, hotServers.size());
+        }
+
+        return plan;
+    }
+
+    private void executeMoves() {
+        if (!running.get()) return;
+
+        try {
+            int budget = configManager.getMigrationMovesPerSecond();
+            long idleMs = configManager.getMigrationIdleTime() * 1000L;
+            Queue<Move> moves = plannedMoves;
+
+            Move move;
+            while (budget > 0 && (move = moves.peek()) != null) {
+                Optional<RegisteredServer> source = proxyServer.getServer(move.source);
+                Optional<RegisteredServer> target = proxyServer.getServer(move.target);
+                ServerInfo targetInfo = discoveryService.getServerInfo(move.target);
+
+                // La cible a pu devenir suspecte ou pleine depuis le plan
+                boolean targetUsable = target.isPresent() && targetInfo != null && loadBalancingService.isServerHealthy(targetInfo)
+                        && targetInfo.getCurrentPlayers() + loadBalancingService.getPendingConnections(move.target) < targetInfo.getMaxPlayers();
+                Player player = source.isPresent() && targetUsable ? pickIdlePlayer(source.get(), idleMs) : null;
+
+                if (player == null) {
+                    // Plus personne à déplacer depuis cette source, ou cible inutilisable : abandonner ce mouvement
+                    moves.poll();
+                    continue;
+                }
+
+                migratePlayer(player, target.get());
+                budget--;
+
+                if (--move.remaining <= 0) {
+                    moves.poll();
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Erreur lors de l'exécution des migrations", e);
+        }
+    }
+
+    private Player pickIdlePlayer(RegisteredServer source, long idleMs) {
+        long now = System.currentTimeMillis();
+        Player candidate = null;
+        long oldestActivity = Long.MAX_VALUE;
+
+        // Le proxy ne voit pas l'état de jeu : on retient le joueur sans chat ni commande depuis le plus longtemps
+        for (Player player : source.getPlayersConnected()) {
+            long last = lastActivity.getOrDefault(player.getUniqueId(), 0L);
+            if (now - last < idleMs || isInFlight(player.getUniqueId(), now) || player.hasPermission(EXEMPT_PERMISSION)) {
+                continue;
+            }
+            if (last < oldestActivity) {
+                oldestActivity = last;
+                candidate = player;
+            }
+        }
+
+        return candidate;
+    }
+
+    private boolean isInFlight(UUID playerId, long now) {
+        Long deadline = inFlight.get(playerId);
+        if (deadline == null) {
+            return false;
+        }
+        if (deadline <= now) {
+            inFlight.remove(playerId, deadline);
+            return false;
+        }
+        return true;
+    }
+
+    private void migratePlayer(Player player, RegisteredServer target) {
+        String targetName = target.getServerInfo().getName();
+        UUID playerId = player.getUniqueId();
+
+        // Un seul transfert à la fois par joueur, compté comme connexion en cours sur la cible jusqu'à son arrivée
+        inFlight.put(playerId, System.currentTimeMillis() + configManager.getPendingConnectionTimeout() * 1000L);
+        loadBalancingService.reserveConnection(targetName, playerId);
+
+        // La cible accorde la place comme pour une connexion initiale : sa capacité vue par les autres proxies reste juste
+        slotReservationService.reserve(targetName, playerId).thenAccept(granted -> {
+            if (!granted) {
+                loadBalancingService.releaseConnection(targetName, playerId);
+                inFlight.remove(playerId);
+                logger.debug("Migration du joueur {} vers {} refusée par le serveur", player.getUsername(), targetName);
+                return;
+            }
+
+            player.sendMessage(Component.text()
+                    .append(Component.text("Serveur surchargé, transfert vers ", NamedTextColor.YELLOW))
+                    .append(Component.text(targetName, NamedTextColor.GREEN))
+                    .build());
+
+            player.createConnectionRequest(target).connect().whenComplete((result, error) -> {
+                if (error != null || !result.isSuccessful()) {
+                    // L'arrivée ne libérera pas les réservations : les rendre ici et laisser le joueur éligible au plan suivant
+                    slotReservationService.release(targetName, playerId);
+                    loadBalancingService.releaseConnection(targetName, playerId);
+                    inFlight.remove(playerId);
+                    logger.debug("Migration du joueur {} vers {} échouée", player.getUsername(), targetName);
+                }
+            });
+
+            logger.debug("Joueur {} migré vers {}", player.getUsername(), targetName);
+        });
+    }
+
+    @Subscribe
+    public void onServerConnected(ServerConnectedEvent event) {
+        // Une arrivée compte comme une activité : un joueur qui vient d'être déplacé ne l'est pas de nouveau
+        markActive(event.getPlayer().getUniqueId());
+        inFlight.remove(event.getPlayer().getUniqueId());
+    }
+
+    @Subscribe
+    public void onPlayerChat(PlayerChatEvent event) {
+        markActive(event.getPlayer().getUniqueId());
+    }
+
+    @Subscribe
+    public void onCommand(CommandExecuteEvent event) {
+        if (event.getCommandSource() instanceof Player) {
+            markActive(((Player) event.getCommandSource()).getUniqueId());
+        }
+    }
+
+    @Subscribe
+    public void onDisconnect(DisconnectEvent event) {
+        lastActivity.remove(event.getPlayer().getUniqueId());
+        inFlight.remove(event.getPlayer().getUniqueId());
+    }
+
+    private void markActive(UUID playerId) {
+        lastActivity.put(playerId, System.currentTimeMillis());
+    }
+
+    private static int capacityAt(ServerInfo serverInfo, int percent) {
+        return serverInfo.getMaxPlayers() * percent / 100;
+    }
+
+    private static double ratio(ServerInfo serverInfo, Map<String, Integer> projected) {
+        if (serverInfo.getMaxPlayers() == 0) {
+            return 0.0;
+        }
+        return (double) projected.get(serverInfo.getName()) / serverInfo.getMaxPlayers();
+    }
+
+    private static class Move {
+        private final String source;
+        private final String target;
+        private int remaining;
+
+        private Move(String source, String target, int remaining) {
+            this.source = source;
+            this.target = target;
+            this.remaining = remaining;
+        }
+    }
+}
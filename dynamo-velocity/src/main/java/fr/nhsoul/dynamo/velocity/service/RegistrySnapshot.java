@@ -0,0 +1,54 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// Vue immuable et versionnée des serveurs découverts, republiée à chaque ajout, retrait ou changement d'adresse/groupes.
+// Les lecteurs la partagent sans copie ; une version inchangée garantit que les serveurs et leurs adresses sont les mêmes.
+// Les compteurs d'un serveur (joueurs, MSPT…) restent mis à jour en place par les heartbeats.
+public final class RegistrySnapshot {
+    static final RegistrySnapshot EMPTY = new RegistrySnapshot(0, Collections.emptyMap());
+
+    private final long version;
+    private final Map<String, ServerInfo> servers;
+
+    private RegistrySnapshot(long version, Map<String, ServerInfo> servers) {
+        this.version = version;
+        this.servers = servers;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<String, ServerInfo> getServers() {
+        return servers;
+    }
+
+    public ServerInfo get(String serverName) {
+        return servers.get(serverName);
+    }
+
+    public int size() {
+        return servers.size();
+    }
+
+    RegistrySnapshot with(ServerInfo serverInfo) {
+        Map<String, ServerInfo> copy = new HashMap<>(servers);
+        copy.put(serverInfo.getName(), serverInfo);
+        return new RegistrySnapshot(version + 1, Collections.unmodifiableMap(copy));
+    }
+
+    RegistrySnapshot without(String serverName) {
+        if (!servers.containsKey(serverName)) {
+            return this;
+        }
+
+        Map<String, ServerInfo> copy = new HashMap<>(servers);
+        copy.remove(serverName);
+        return new RegistrySnapshot(version + 1, Collections.unmodifiableMap(copy));
+    }
+}
@@ -0,0 +1,115 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+import fr.nhsoul.dynamo.common.util.ProtobufSerializer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+// Copie locale du registre pour redémarrer sans attendre NATS.
+// Format : en-tête (magic, date d'écriture, nombre d'entrées) puis chaque ServerInfo protobuf préfixé de sa taille.
+// L'écriture passe par un fichier temporaire synchronisé sur disque puis renommé atomiquement :
+// un arrêt brutal laisse l'ancienne copie intacte. À la lecture, chaque taille est vérifiée contre celle du fichier.
+public class RegistrySnapshotStore {
+    private static final int MAGIC = 0x44594E31; // "DYN1"
+    private static final int HEADER_SIZE = 4 + 8 + 4;
+
+    private final Path file;
+    private final Path tempFile;
+
+    public RegistrySnapshotStore(Path file) {
+        this.file = file;
+        this.tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    public void write(Collection<ServerInfo> servers) throws IOException {
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(MAGIC);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(servers.size());
+
+            for (ServerInfo serverInfo : servers) {
+                byte[] data = ProtobufSerializer.serializeServerInfo(serverInfo);
+                out.writeInt(data.length);
+                out.write(data);
+            }
+
+            // Contenu sur disque avant le renommage : sinon une coupure peut laisser un fichier renommé mais vide
+            out.flush();
+            channel.force(true);
+        }
+
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    // Rend le renommage lui-même durable ; pas supporté partout (Windows), d'où l'échec silencieux
+    private void syncDirectory() {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory == null) return;
+
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Renvoie une liste vide si la copie est absente ou plus vieille que maxAgeMs ; IOException si elle est corrompue
+    public List<ServerInfo> read(long maxAgeMs) throws IOException {
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+
+        long remaining = Files.size(file) - HEADER_SIZE;
+        if (remaining < 0) {
+            throw new IOException("Copie du registre tronquée: " + file);
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Format de copie du registre inconnu: " + file);
+            }
+
+            long savedAt = in.readLong();
+            if (System.currentTimeMillis() - savedAt > maxAgeMs) {
+                return Collections.emptyList();
+            }
+
+            // Aucune taille n'est crue sur parole : un fichier abîmé ne doit pas provoquer d'allocation démesurée
+            int count = in.readInt();
+            if (count < 0 || count > remaining / 4) {
+                throw new IOException("Copie du registre corrompue (" + count + " entrées annoncées): " + file);
+            }
+
+            List<ServerInfo> servers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                remaining -= 4;
+                if (length < 0 || length > remaining) {
+                    throw new IOException("Copie du registre corrompue (entrée " + i + "): " + file);
+                }
+                remaining -= length;
+
+                byte[] data = new byte[length];
+                in.readFully(data);
+                servers.add(ProtobufSerializer.deserializeServerInfo(data));
+            }
+            return servers;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.time.Duration;
+import java.util.UUID;
+
+// Dernier serveur de chaque joueur, borné en taille et expirant après le délai configuré.
+// Un joueur qui revient à temps retrouve son serveur, dont les données sont encore chaudes.
+public class ServerAffinityCache {
+    private final Cache<UUID, String> lastServers;
+
+    public ServerAffinityCache(long maxSize, Duration ttl) {
+        this.lastServers = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxSize))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    public void remember(UUID playerId, String serverName) {
+        lastServers.put(playerId, serverName);
+    }
+
+    public String getLastServer(UUID playerId) {
+        return lastServers.getIfPresent(playerId);
+    }
+
+    public CacheStats getStats() {
+        return lastServers.stats();
+    }
+
+    public long getSize() {
+        return lastServers.estimatedSize();
+    }
+
+    public String format() {
+        CacheStats stats = lastServers.stats();
+        return String.format("%d entrées, succès %.1f%%, échecs %.1f%%, évictions %d",
+                lastServers.estimatedSize(), stats.hitRate() * 100, stats.missRate() * 100, stats.evictionCount());
+    }
+}
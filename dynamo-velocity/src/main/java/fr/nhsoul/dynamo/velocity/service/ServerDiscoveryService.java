@@ -2,20 +2,35 @@
 package fr.nhsoul.dynamo.velocity.service;
 
 import com.velocitypowered.api.proxy.ProxyServer;
-import com.velocitypowered.api.proxy.server.RegisteredServer;
 import com.velocitypowered.api.proxy.server.ServerInfo;
+import fr.nhsoul.dynamo.common.config.TopicsConfig;
+import fr.nhsoul.dynamo.common.model.ResyncRequest;
 import fr.nhsoul.dynamo.common.model.ServerEvent;
+import fr.nhsoul.dynamo.common.util.ProtobufSerializer;
 import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager;
 import io.nats.client.Dispatcher;
+import io.nats.client.KeyValue;
+import io.nats.client.api.KeyValueEntry;
+import io.nats.client.api.KeyValueOperation;
+import io.nats.client.api.KeyValueWatcher;
+import io.nats.client.impl.NatsKeyValueWatchSubscription;
 import org.slf4j.Logger;
 
 import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 public class ServerDiscoveryService {
     private final ProxyServer proxyServer;
@@ -24,9 +39,36 @@ public class ServerDiscoveryService {
     private final Logger logger;
     private final AtomicBoolean running = new AtomicBoolean(false);
     
-    private final Map<String, fr.nhsoul.dynamo.common.model.ServerInfo> discoveredServers = new ConcurrentHashMap<>();
+    // Republié uniquement quand l'ensemble des serveurs change ; écritures sérialisées par registryLock
+    private volatile RegistrySnapshot snapshot = RegistrySnapshot.EMPTY;
+    private final Object registryLock = new Object();
+    private final GroupIndex groupIndex = new GroupIndex();
+    private final TickHealthTracker tickHealth;
+    private final ExpiryWheel expiryWheel;
+    private final PhiAccrualFailureDetector failureDetector;
+    private final ServerSequenceTracker sequenceTracker = new ServerSequenceTracker();
+    private final Map<Integer, Long> lastResyncRequests = new ConcurrentHashMap<>();
+    
+    // Dernière séquence reçue par émetteur : un serveur de plusieurs groupes servis arrive une fois par sujet
+    private final Map<Integer, Long> lastIngested = new ConcurrentHashMap<>();
+    private final LongAdder duplicates = new LongAdder();
+    private final DiscoveryApplier applier;
+    private final DiscoveryIngest ingest;
+    
+    // Serveurs rechargés depuis la copie locale, pas encore confirmés par un heartbeat
+    private final Set<String> unverified = ConcurrentHashMap.newKeySet();
+    private final RegistrySnapshotStore snapshotStore;
+    private long savedVersion = -1;
+    
+    // Adresse enregistrée dans Velocity par serveur, lue et écrite uniquement par le thread de l'applicateur
+    private final Map<String, String> velocityAddresses = new HashMap<>();
+    // Noms déjà déclarés dans velocity.toml : signalés une fois, jamais remplacés ni retirés
+    private final Set<String> staticServers = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<fr.nhsoul.dynamo.common.model.ServerInfo>> updateListeners = new CopyOnWriteArrayList<>();
     private ScheduledExecutorService scheduler;
-    private Dispatcher natsDispatcher;
+    private volatile Dispatcher natsDispatcher;
+    private volatile List<String> subscribedSubjects = List.of();
+    private volatile NatsKeyValueWatchSubscription keyValueWatch;
     
     public ServerDiscoveryService(ProxyServer proxyServer, NatsService natsService, 
                                 VelocityConfigManager configManager, Logger logger) {
@@ -34,17 +76,59 @@ public class ServerDiscoveryService {
         this.natsService = natsService;
         this.configManager = configManager;
         this.logger = logger;
+        this.tickHealth = new TickHealthTracker(configManager.getMsptSmoothing() * 1000L);
+        this.failureDetector = new PhiAccrualFailureDetector(configManager.getPhiThreshold(), configManager.getPhiMinStdDev());
+        this.applier = new DiscoveryApplier(new DiscoveryApplier.Sink() {
+            @Override
+            public void onEvent(ServerEvent event, long firstSequence) {
+                applyServerEvent(event, firstSequence);
+            }
+            
+            @Override
+            public void onExpired(String serverName) {
+                handleServerExpired(serverName);
+            }
+            
+            @Override
+            public Integer getServerId(String serverName) {
+                return sequenceTracker.getServerId(serverName);
+            }
+        }, logger);
+        
+        // Les échéances passent elles aussi par l'applicateur : aucune course avec un REGISTER simultané
+        this.expiryWheel = new ExpiryWheel(configManager.getExpiryTick(), configManager.getServerTimeout() * 1000L,
+            applier::submitExpiry);
+        this.ingest = new DiscoveryIngest(this::onServerEvent, configManager.getIngestCapacity(),
+            configManager.getIngestDecodeThreads(), configManager.getIngestMaxBlock(), logger);
+        this.snapshotStore = configManager.isSnapshotEnabled()
+            ? new RegistrySnapshotStore(configManager.getSnapshotFile()) : null;
     }
     
     public void start() {
         if (running.compareAndSet(false, true)) {
             scheduler = Executors.newScheduledThreadPool(2);
             
-            // S'abonner aux événements de serveur
-            subscribeToServerEvents();
+            // Recharger la copie locale avant l'applicateur : le routage peut commencer sans NATS
+            if (snapshotStore != null) {
+                preloadSnapshot();
+            }
+            
+            // Démarrer l'unique écrivain du registre et les décodeurs, puis s'abonner aux événements de serveur
+            applier.start();
+            ingest.start();
+            
+            // NATS injoignable au démarrage : la copie locale assure le routage jusqu'à la première connexion
+            if (!natsService.isConnected()) {
+                logger.warn("NATS indisponible : routage limité aux serveurs de la copie locale du registre");
+            }
+            natsService.whenConnected(this::connectRegistry);
             
-            // Démarrer la tâche de nettoyage
-            startCleanupTask();
+            // Faire tourner la roue d'expiration
+            startExpiryTask();
+            
+            if (snapshotStore != null) {
+                startSnapshotTasks();
+            }
             
             logger.info("Service de découverte de serveurs démarré.");
         }
@@ -53,31 +137,217 @@ public class ServerDiscoveryService {
     public void stop() {
         if (running.compareAndSet(true, false)) {
             if (natsDispatcher != null) {
-                String pattern = configManager.getTopicsPattern();
-                natsDispatcher.unsubscribe(pattern);
+                subscribedSubjects.forEach(natsDispatcher::unsubscribe);
+            }
+            
+            if (keyValueWatch != null) {
+                keyValueWatch.unsubscribe();
             }
             
             if (scheduler != null) {
                 scheduler.shutdown();
             }
             
+            ingest.stop();
+            applier.stop();
+            
+            if (snapshotStore != null) {
+                saveSnapshot();
+            }
+            
             logger.info("Service de découverte de serveurs arrêté.");
         }
     }
     
+    private void connectRegistry() {
+        if (!running.get()) return;
+        
+        // Mode KV : le rejeu initial du bucket fournit l'état complet, sans requête de démarrage
+        if (!configManager.isKeyValueRegistry() || !watchKeyValueRegistry()) {
+            subscribeToServerEvents();
+            
+            // Interroger les serveurs déjà en ligne plutôt que d'attendre leur prochain heartbeat
+            bootstrapRegistry();
+            endSnapshotBridge();
+        }
+    }
+    
+    // NATS joignable et registre rejoué : la copie locale a fini de servir de pont. Les serveurs qu'elle seule
+    // connaît ne sont plus prolongés par les pings et expirent faute de heartbeat
+    private void endSnapshotBridge() {
+        if (unverified.isEmpty()) return;
+        
+        logger.info("{} serveurs de la copie locale sans nouvelles de NATS, laissés à l'expiration", unverified.size());
+        unverified.clear();
+    }
+    
     private void subscribeToServerEvents() {
+        if (configManager.isGroupSubjects()) {
+            subscribeToServedGroups();
+            return;
+        }
+        
         String pattern = configManager.getTopicsPattern();
+        subscribedSubjects = List.of(pattern);
         
-        natsDispatcher = natsService.subscribe(pattern, this::handleServerEvent);
+        natsDispatcher = natsService.subscribe(pattern, ingest::offer);
         logger.info("Abonnement aux événements serveur sur le pattern: {}", pattern);
     }
     
-    private void handleServerEvent(ServerEvent event) {
+    private void subscribeToServedGroups() {
+        TopicsConfig topics = configManager.getTopicsConfig();
+        List<String> subjects = new ArrayList<>();
+        for (String group : configManager.getServedGroups()) {
+            subjects.add(topics.groupPattern(group));
+        }
+        subscribedSubjects = List.copyOf(subjects);
+        
+        // Un seul dispatcher : les événements de tous les groupes restent traités dans l'ordre d'arrivée
+        natsDispatcher = natsService.subscribe(subjects.get(0), ingest::offer);
+        for (int i = 1; i < subjects.size(); i++) {
+            natsDispatcher.subscribe(subjects.get(i));
+        }
+        
+        logger.info("Abonnement aux événements serveur des groupes servis: {}", subjects);
+    }
+    
+    private boolean watchKeyValueRegistry() {
+        String bucket = configManager.getRegistryBucket();
+        long start = System.currentTimeMillis();
+        
+        try {
+            KeyValue keyValue = natsService.openKeyValue(bucket,
+                Duration.ofSeconds(configManager.getRegistryTtl()), configManager.getRegistryHistory());
+            
+            keyValueWatch = keyValue.watchAll(new KeyValueWatcher() {
+                @Override
+                public void watch(KeyValueEntry entry) {
+                    onKeyValueEntry(entry);
+                }
+                
+                @Override
+                public void endOfData() {
+                    logger.info("Registre KV {} rejoué: {} serveurs en {} ms", bucket,
+                        snapshot.size() + applier.getBacklog(), System.currentTimeMillis() - start);
+                    endSnapshotBridge();
+                }
+            });
+            
+            logger.info("Surveillance du registre KV: {}", bucket);
+            return true;
+        } catch (Exception e) {
+            logger.error("Registre KV {} indisponible, retour aux heartbeats classiques", bucket, e);
+            return false;
+        }
+    }
+    
+    private void onKeyValueEntry(KeyValueEntry entry) {
+        try {
+            if (entry.getOperation() == KeyValueOperation.PUT) {
+                ingest.offer(entry.getValue());
+                return;
+            }
+            
+            // Suppression de l'entrée : équivalent d'un UNREGISTER du serveur.
+            // Une entrée expirée par le ttl du bucket n'arrive jamais ici : la roue d'expiration s'en charge
+            fr.nhsoul.dynamo.common.model.ServerInfo removed = new fr.nhsoul.dynamo.common.model.ServerInfo();
+            removed.setName(entry.getKey());
+            onServerEvent(new ServerEvent(ServerEvent.EventType.UNREGISTER, removed), System.currentTimeMillis());
+        } catch (Exception e) {
+            logger.error("Entrée KV invalide pour {}", entry.getKey(), e);
+        }
+    }
+    
+    private void bootstrapRegistry() {
+        int timeout = configManager.getBootstrapTimeout();
+        if (timeout <= 0) return;
+        
+        // Abonné aux seuls sujets de ses groupes : ne demander, et ne retenir, que les serveurs de ces groupes.
+        // Le filtre local couvre les serveurs d'une version qui répond sans tenir compte des groupes
+        ResyncRequest request = new ResyncRequest(0, configManager.isGroupSubjects()
+            ? List.copyOf(configManager.getServedGroups()) : List.of());
+        
+        long start = System.currentTimeMillis();
+        try {
+            int replies = natsService.collectReplies(configManager.getTopicsConfig().getResync(),
+                ProtobufSerializer.serializeResyncRequest(request), Duration.ofMillis(timeout),
+                Duration.ofMillis(configManager.getBootstrapQuietPeriod()),
+                event -> {
+                    if (!event.isFull() || request.matches(event.getServerId(), event.getServerInfo().getGroups())) {
+                        onServerEvent(event, System.currentTimeMillis());
+                    }
+                });
+            
+            // Les réponses passent par l'applicateur : attendre qu'elles soient indexées et enregistrées dans Velocity
+            if (!applier.awaitApplied(timeout)) {
+                logger.warn("Réponses de démarrage encore en cours d'application après {} ms", timeout);
+            }
+            
+            logger.info("Registre initialisé: {} serveurs ont répondu en {} ms", replies, System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Impossible d'interroger les serveurs au démarrage, attente des heartbeats", e);
+        }
+    }
+    
+    private void onServerEvent(ServerEvent event, long arrivalMs) {
         if (!running.get()) return;
         
+        // Copie déjà reçue par le sujet d'un autre groupe : ne compter ni un heartbeat ni un message de plus
+        if (event.getServerId() != 0 && !isFirstDelivery(event.getServerId(), event.getSequence())) {
+            duplicates.increment();
+            return;
+        }
+        
+        // Le détecteur mesure l'arrivée réelle des heartbeats, avant tout regroupement par l'applicateur
+        if (event.getType() == ServerEvent.EventType.HEARTBEAT || event.getType() == ServerEvent.EventType.REGISTER) {
+            String serverName = event.isFull() ? event.getServerInfo().getName() : sequenceTracker.getServerName(event.getServerId());
+            if (serverName != null) {
+                failureDetector.heartbeat(serverName, arrivalMs);
+            }
+        }
+        
+        applier.submit(event);
+    }
+    
+    private boolean isFirstDelivery(int serverId, long sequence) {
+        boolean[] first = new boolean[1];
+        lastIngested.compute(serverId, (id, last) -> {
+            if (last == null || sequence > last) {
+                first[0] = true;
+                return sequence;
+            }
+            return last;
+        });
+        return first[0];
+    }
+    
+    private void applyServerEvent(ServerEvent event, long firstSequence) {
+        if (!event.isFull()) {
+            handleServerDelta(event, firstSequence);
+            return;
+        }
+        
         fr.nhsoul.dynamo.common.model.ServerInfo serverInfo = event.getServerInfo();
         String serverName = serverInfo.getName();
         
+        // Serveur redémarré sous un nouvel identifiant : oublier l'ancien
+        Integer previousId = sequenceTracker.getServerId(serverName);
+        if (previousId != null && previousId != event.getServerId()) {
+            lastIngested.remove(previousId);
+        }
+        
+        // Message complet rejoué ou dépassé par un message déjà appliqué
+        if (!sequenceTracker.acceptFull(event.getServerId(), serverName, event.getSequence())) {
+            return;
+        }
+        lastResyncRequests.remove(event.getServerId());
+        
+        if (unverified.remove(serverName)) {
+            logger.info("Serveur {} de la copie locale confirmé par un heartbeat", serverName);
+        }
+        
         switch (event.getType()) {
             case REGISTER:
                 handleServerRegister(serverInfo);
@@ -101,14 +371,58 @@ public class ServerDiscoveryService {
         }
     }
     
+    private void handleServerDelta(ServerEvent event, long firstSequence) {
+        int serverId = event.getServerId();
+        
+        switch (sequenceTracker.acceptDelta(serverId, firstSequence, event.getSequence())) {
+            case STALE:
+                return;
+                
+            case UNKNOWN:
+                // Proxy démarré après le REGISTER ou serveur expiré entre-temps : réclamer l'état complet
+                requestResync(serverId);
+                return;
+                
+            case APPLY_AND_RESYNC:
+                requestResync(serverId);
+                break;
+                
+            default:
+                break;
+        }
+        
+        String serverName = sequenceTracker.getServerName(serverId);
+        if (serverName == null) return;
+        
+        if (applyDelta(serverName, event) == null) {
+            requestResync(serverId);
+        }
+    }
+    
+    private void requestResync(int serverId) {
+        long now = System.currentTimeMillis();
+        Long last = lastResyncRequests.get(serverId);
+        
+        // Au plus une demande par seconde et par serveur, quel que soit le nombre de deltas reçus entre-temps
+        if (last != null && now - last < 1000L) return;
+        lastResyncRequests.put(serverId, now);
+        
+        try {
+            natsService.publish(configManager.getTopicsConfig().getResync(), ProtobufSerializer.serializeResyncRequest(new ResyncRequest(serverId, List.of())));
+            logger.debug("Resynchronisation demandée au serveur {}", serverId);
+        } catch (Exception e) {
+            logger.warn("Impossible de demander une resynchronisation au serveur {}", serverId, e);
+        }
+    }
+    
     private void handleServerRegister(fr.nhsoul.dynamo.common.model.ServerInfo serverInfo) {
         String serverName = serverInfo.getName();
         
         // Ajouter ou mettre à jour le serveur découvert
-        discoveredServers.put(serverName, serverInfo);
+        serverInfo = storeServerInfo(serverInfo, true);
         
         // Enregistrer le serveur dans Velocity
-        registerServerInVelocity(serverInfo);
+        ensureRegisteredInVelocity(serverInfo);
         
         logger.info("Serveur enregistré: {} ({}:{})", serverName, serverInfo.getHost(), serverInfo.getPort());
     }
@@ -117,85 +431,321 @@ public class ServerDiscoveryService {
         String serverName = serverInfo.getName();
         
         // Mettre à jour les informations du serveur
-        discoveredServers.put(serverName, serverInfo);
+        serverInfo = storeServerInfo(serverInfo, true);
         
-        // S'assurer que le serveur est enregistré dans Velocity
-        if (!proxyServer.getServer(serverName).isPresent()) {
-            registerServerInVelocity(serverInfo);
-        }
+        // S'assurer que le serveur est enregistré dans Velocity (simple lecture locale si l'adresse n'a pas changé)
+        ensureRegisteredInVelocity(serverInfo);
     }
     
     private void handleServerUnregister(String serverName) {
         // Supprimer le serveur de nos données
-        discoveredServers.remove(serverName);
+        removeServerInfo(serverName);
         
         // Supprimer le serveur de Velocity
-        proxyServer.getServer(serverName).ifPresent(server -> {
-            proxyServer.unregisterServer(server.getServerInfo());
+        if (unregisterFromVelocity(serverName)) {
             logger.info("Serveur désenregistré: {}", serverName);
-        });
+        }
     }
     
     private void handlePlayerCountUpdate(fr.nhsoul.dynamo.common.model.ServerInfo serverInfo) {
         String serverName = serverInfo.getName();
         
-        // Mettre à jour les informations du serveur
-        discoveredServers.put(serverName, serverInfo);
+        // Mettre à jour les informations du serveur ; le MSPT d'une arrivée ou d'un départ n'est pas un échantillon
+        serverInfo = storeServerInfo(serverInfo, false);
+        ensureRegisteredInVelocity(serverInfo);
         
         logger.debug("Nombre de joueurs mis à jour pour {}: {}/{}", 
                     serverName, serverInfo.getCurrentPlayers(), serverInfo.getMaxPlayers());
     }
     
-    private void registerServerInVelocity(fr.nhsoul.dynamo.common.model.ServerInfo serverInfo) {
+    // msptSample : le message porte une mesure fraîche du MSPT, à verser dans la moyenne lissée
+    private fr.nhsoul.dynamo.common.model.ServerInfo storeServerInfo(fr.nhsoul.dynamo.common.model.ServerInfo serverInfo,
+                                                                     boolean msptSample) {
+        // Conserver une instance stable par serveur pour que l'index n'ait à réagir qu'aux vrais changements
+        // Sous le verrou du registre : un heartbeat ne peut pas réinsérer dans l'index un serveur retiré en parallèle
+        fr.nhsoul.dynamo.common.model.ServerInfo current;
+        synchronized (registryLock) {
+            current = snapshot.get(serverInfo.getName());
+            
+            if (current != null) {
+                fr.nhsoul.dynamo.common.model.ServerInfo.Endpoint previous = current.getEndpoint();
+                current.updateFrom(serverInfo);
+                
+                // Adresse ou groupes modifiés : nouvelle version, pour les lecteurs comme pour la copie locale
+                if (!previous.equals(current.getEndpoint())) {
+                    snapshot = snapshot.with(current);
+                }
+            } else {
+                current = serverInfo;
+                snapshot = snapshot.with(current);
+            }
+            
+            groupIndex.update(current);
+            
+            // Réarmer l'échéance du serveur : une simple écriture si elle est déjà dans la roue
+            expiryWheel.touch(current.getName(), current.getTimestamp() + configManager.getServerTimeout() * 1000L);
+        }
+        
+        notifyUpdated(current, msptSample);
+        return current;
+    }
+    
+    private fr.nhsoul.dynamo.common.model.ServerInfo applyDelta(String serverName, ServerEvent event) {
+        fr.nhsoul.dynamo.common.model.ServerInfo current;
+        synchronized (registryLock) {
+            current = snapshot.get(serverName);
+            if (current == null) {
+                return null;
+            }
+            
+            event.getDelta().applyTo(current);
+            current.setTimestamp(event.getTimestamp());
+            groupIndex.update(current);
+            expiryWheel.touch(serverName, current.getTimestamp() + configManager.getServerTimeout() * 1000L);
+        }
+        
+        // Un delta sans MSPT (nombre de joueurs seul) ne doit pas recompter l'ancienne valeur
+        notifyUpdated(current, event.getDelta().getMspt() != null);
+        return current;
+    }
+    
+    private void notifyUpdated(fr.nhsoul.dynamo.common.model.ServerInfo current, boolean msptSample) {
+        if (msptSample) {
+            tickHealth.record(current.getName(), current.getMspt());
+        }
+        
+        for (Consumer<fr.nhsoul.dynamo.common.model.ServerInfo> listener : updateListeners) {
+            listener.accept(current);
+        }
+    }
+    
+    private boolean removeServerInfo(String serverName) {
+        synchronized (registryLock) {
+            RegistrySnapshot current = snapshot;
+            RegistrySnapshot updated = current.without(serverName);
+            if (updated == current) {
+                return false;
+            }
+            
+            snapshot = updated;
+            groupIndex.remove(serverName);
+            expiryWheel.remove(serverName);
+        }
+        
+        Integer serverId = sequenceTracker.getServerId(serverName);
+        if (serverId != null) {
+            lastIngested.remove(serverId);
+        }
+        
+        unverified.remove(serverName);
+        tickHealth.remove(serverName);
+        failureDetector.remove(serverName);
+        sequenceTracker.remove(serverName);
+        return true;
+    }
+    
+    private void ensureRegisteredInVelocity(fr.nhsoul.dynamo.common.model.ServerInfo serverInfo) {
+        String serverName = serverInfo.getName();
+        // Une seule lecture : hôte et port de la même version
+        fr.nhsoul.dynamo.common.model.ServerInfo.Endpoint endpoint = serverInfo.getEndpoint();
+        String address = endpoint.getAddress();
+        
+        // Ne toucher au registre de Velocity que si l'adresse a réellement changé
+        if (address.equals(velocityAddresses.get(serverName))) {
+            return;
+        }
+        
+        if (!velocityAddresses.containsKey(serverName) && proxyServer.getServer(serverName).isPresent()) {
+            if (staticServers.add(serverName)) {
+                logger.warn("Serveur {} déjà déclaré dans la configuration de Velocity : l'entrée statique est conservée", serverName);
+            }
+            return;
+        }
+        
         try {
-            InetSocketAddress address = new InetSocketAddress(serverInfo.getHost(), serverInfo.getPort());
-            ServerInfo velocityServerInfo = new ServerInfo(serverInfo.getName(), address);
+            unregisterFromVelocity(serverName);
             
-            RegisteredServer registeredServer = proxyServer.createRawRegisteredServer(velocityServerInfo);
+            ServerInfo velocityServerInfo = new ServerInfo(serverName,
+                new InetSocketAddress(endpoint.getHost(), endpoint.getPort()));
             proxyServer.registerServer(velocityServerInfo);
+            velocityAddresses.put(serverName, address);
             
-            logger.debug("Serveur {} enregistré dans Velocity", serverInfo.getName());
+            logger.debug("Serveur {} enregistré dans Velocity ({})", serverName, address);
         } catch (Exception e) {
-            logger.error("Erreur lors de l'enregistrement du serveur {} dans Velocity", serverInfo.getName(), e);
+            logger.error("Erreur lors de l'enregistrement du serveur {} dans Velocity", serverName, e);
         }
     }
     
-    private void startCleanupTask() {
-        int cleanupInterval = configManager.getCleanupInterval();
-        int serverTimeout = configManager.getServerTimeout();
+    private boolean unregisterFromVelocity(String serverName) {
+        // Seuls les serveurs enregistrés par Dynamo sont retirés (suppression KV, purge, expiration, UNREGISTER)
+        if (velocityAddresses.remove(serverName) == null) {
+            return false;
+        }
         
-        scheduler.scheduleWithFixedDelay(() -> {
+        return proxyServer.getServer(serverName).map(server -> {
+            proxyServer.unregisterServer(server.getServerInfo());
+            return true;
+        }).orElse(false);
+    }
+    
+    private void startExpiryTask() {
+        long tick = Math.max(1, configManager.getExpiryTick());
+        
+        scheduler.scheduleAtFixedRate(() -> {
             if (!running.get()) return;
             
-            long timeoutMs = serverTimeout * 1000L;
+            try {
+                expiryWheel.advance(System.currentTimeMillis());
+            } catch (Exception e) {
+                logger.error("Erreur lors de l'expiration des serveurs", e);
+            }
+        }, tick, tick, TimeUnit.MILLISECONDS);
+    }
+    
+    private void handleServerExpired(String serverName) {
+        long timeoutMs = configManager.getServerTimeout() * 1000L;
+        
+        synchronized (registryLock) {
+            fr.nhsoul.dynamo.common.model.ServerInfo serverInfo = snapshot.get(serverName);
+            if (serverInfo == null) return;
             
-            // Identifier les serveurs expirés
-            discoveredServers.entrySet().removeIf(entry -> {
-                fr.nhsoul.dynamo.common.model.ServerInfo serverInfo = entry.getValue();
-                
-                if (serverInfo.isTimedOut(timeoutMs)) {
-                    String serverName = entry.getKey();
-                    
-                    // Supprimer le serveur de Velocity
-                    proxyServer.getServer(serverName).ifPresent(server -> {
-                        proxyServer.unregisterServer(server.getServerInfo());
-                        logger.info("Serveur expiré supprimé: {}", serverName);
-                    });
-                    
-                    return true;
-                }
-                return false;
-            });
+            // Un heartbeat a pu arriver entre l'échéance et ce rappel : réarmer au lieu de retirer
+            if (!serverInfo.isTimedOut(timeoutMs)) {
+                expiryWheel.touch(serverName, serverInfo.getTimestamp() + timeoutMs);
+                return;
+            }
+        }
+        
+        if (removeServerInfo(serverName)) {
+            // Supprimer le serveur de Velocity
+            unregisterFromVelocity(serverName);
+            logger.info("Serveur expiré supprimé: {}", serverName);
+        }
+    }
+    
+    private void preloadSnapshot() {
+        List<fr.nhsoul.dynamo.common.model.ServerInfo> servers;
+        try {
+            servers = snapshotStore.read(configManager.getSnapshotMaxAge() * 1000L);
+        } catch (Exception e) {
+            logger.warn("Copie locale du registre illisible, ignorée: {}", e.getMessage());
+            return;
+        }
+        
+        // Le délai d'expiration part du rechargement ; les pings le prolongent jusqu'au premier heartbeat
+        long now = System.currentTimeMillis();
+        for (fr.nhsoul.dynamo.common.model.ServerInfo serverInfo : servers) {
+            serverInfo.setTimestamp(now);
+            unverified.add(serverInfo.getName());
+            storeServerInfo(serverInfo, false);
+            ensureRegisteredInVelocity(serverInfo);
+        }
+        
+        if (!servers.isEmpty()) {
+            logger.info("{} serveurs rechargés depuis la copie locale du registre (non vérifiés)", servers.size());
+        }
+    }
+    
+    private void startSnapshotTasks() {
+        int interval = Math.max(1, configManager.getSnapshotInterval());
+        scheduler.scheduleWithFixedDelay(() -> {
+            if (running.get()) saveSnapshot();
+        }, interval, interval, TimeUnit.SECONDS);
+        
+        int probeInterval = Math.max(1, configManager.getSnapshotProbeInterval());
+        scheduler.scheduleWithFixedDelay(this::probeUnverified, 0, probeInterval, TimeUnit.SECONDS);
+    }
+    
+    private synchronized void saveSnapshot() {
+        RegistrySnapshot current = snapshot;
+        
+        // Les compteurs de joueurs n'ont pas d'intérêt au redémarrage : écrire seulement si l'ensemble a changé
+        if (current.getVersion() == savedVersion) return;
+        
+        try {
+            snapshotStore.write(current.getServers().values());
+            savedVersion = current.getVersion();
+        } catch (Exception e) {
+            logger.error("Erreur lors de l'écriture de la copie locale du registre", e);
+        }
+    }
+    
+    private void probeUnverified() {
+        if (!running.get()) return;
+        
+        for (String serverName : unverified) {
+            proxyServer.getServer(serverName).ifPresent(server ->
+                server.ping().whenComplete((ping, error) -> onProbeResult(serverName, error == null)));
+        }
+    }
+    
+    private void onProbeResult(String serverName, boolean reachable) {
+        synchronized (registryLock) {
+            fr.nhsoul.dynamo.common.model.ServerInfo serverInfo = snapshot.get(serverName);
+            if (serverInfo == null || !unverified.contains(serverName)) return;
             
-        }, cleanupInterval, cleanupInterval, TimeUnit.SECONDS);
+            if (reachable) {
+                long now = System.currentTimeMillis();
+                serverInfo.setTimestamp(now);
+                expiryWheel.touch(serverName, now + configManager.getServerTimeout() * 1000L);
+                return;
+            }
+            
+            // Injoignable : le faire expirer tout de suite, un heartbeat arrivé entre-temps le réarmera
+            serverInfo.setTimestamp(0);
+        }
+        
+        logger.info("Serveur {} de la copie locale injoignable, retiré", serverName);
+        applier.submitExpiry(serverName);
     }
     
     public Map<String, fr.nhsoul.dynamo.common.model.ServerInfo> getDiscoveredServers() {
-        return new ConcurrentHashMap<>(discoveredServers);
+        // Vue immuable publiée à la dernière modification : aucune copie par lecture
+        return snapshot.getServers();
+    }
+    
+    public RegistrySnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    public long getRegistryVersion() {
+        return snapshot.getVersion();
     }
     
     public fr.nhsoul.dynamo.common.model.ServerInfo getServerInfo(String serverName) {
-        return discoveredServers.get(serverName);
+        return snapshot.get(serverName);
+    }
+    
+    public void addUpdateListener(Consumer<fr.nhsoul.dynamo.common.model.ServerInfo> listener) {
+        updateListeners.add(listener);
+    }
+    
+    public Set<String> getUnverifiedServers() {
+        return unverified;
+    }
+    
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+    
+    public DiscoveryIngest getIngest() {
+        return ingest;
+    }
+    
+    public DiscoveryApplier getApplier() {
+        return applier;
+    }
+    
+    public GroupIndex getGroupIndex() {
+        return groupIndex;
+    }
+    
+    public PhiAccrualFailureDetector getFailureDetector() {
+        return failureDetector;
+    }
+    
+    public TickHealthTracker getTickHealth() {
+        return tickHealth;
     }
 }
 
@@ -0,0 +1,81 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Suivi des séquences du protocole v2 : identifiant compact → serveur et dernière séquence appliquée.
+// Les messages plus anciens que le dernier appliqué sont ignorés ; un trou déclenche une resynchronisation.
+public class ServerSequenceTracker {
+    public enum Result { APPLY, APPLY_AND_RESYNC, STALE, UNKNOWN }
+
+    private final Map<Integer, Entry> entriesById = new HashMap<>();
+    private final Map<String, Integer> idByName = new HashMap<>();
+
+    // Message complet : (re)lie l'identifiant au serveur ; un nouvel identifiant signale un redémarrage
+    public synchronized boolean acceptFull(int serverId, String serverName, long sequence) {
+        // Émetteur v1 sans séquence : toujours appliqué, comme avant
+        if (serverId == 0) return true;
+
+        Entry entry = entriesById.get(serverId);
+        if (entry != null && entry.serverName.equals(serverName)) {
+            if (sequence <= entry.lastSequence) {
+                return false;
+            }
+            entry.lastSequence = sequence;
+            return true;
+        }
+
+        Integer previousId = idByName.put(serverName, serverId);
+        if (previousId != null) {
+            entriesById.remove(previousId);
+        }
+        entriesById.put(serverId, new Entry(serverName, sequence));
+        return true;
+    }
+
+    public synchronized Result acceptDelta(int serverId, long sequence) {
+        return acceptDelta(serverId, sequence, sequence);
+    }
+
+    // Delta cumulant les séquences firstSequence..sequence : un trou n'existe qu'avant la première
+    public synchronized Result acceptDelta(int serverId, long firstSequence, long sequence) {
+        Entry entry = entriesById.get(serverId);
+        if (entry == null) {
+            return Result.UNKNOWN;
+        }
+        if (sequence <= entry.lastSequence) {
+            return Result.STALE;
+        }
+
+        // Les deltas portent des valeurs absolues : on applique même après un trou, le reste viendra du message complet
+        boolean gap = firstSequence > entry.lastSequence + 1;
+        entry.lastSequence = sequence;
+        return gap ? Result.APPLY_AND_RESYNC : Result.APPLY;
+    }
+
+    public synchronized String getServerName(int serverId) {
+        Entry entry = entriesById.get(serverId);
+        return entry != null ? entry.serverName : null;
+    }
+
+    public synchronized Integer getServerId(String serverName) {
+        return idByName.get(serverName);
+    }
+
+    public synchronized void remove(String serverName) {
+        Integer serverId = idByName.remove(serverName);
+        if (serverId != null) {
+            entriesById.remove(serverId);
+        }
+    }
+
+    private static class Entry {
+        private final String serverName;
+        private long lastSequence;
+
+        private Entry(String serverName, long lastSequence) {
+            this.serverName = serverName;
+            this.lastSequence = lastSequence;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.SlotRequest;
+import fr.nhsoul.dynamo.common.util.NetworkUtils;
+import fr.nhsoul.dynamo.common.util.ProtobufSerializer;
+import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Réservation de places auprès du serveur cible avant d'y envoyer un joueur.
+// Plusieurs proxies ne voient que les heartbeats : seul le serveur connaît sa vraie capacité restante.
+// Les demandes vers un même serveur sont regroupées pendant quelques millisecondes en une seule requête NATS.
+// Chaque place est demandée au nom d'un joueur : le serveur ne la libère qu'à l'arrivée de ce joueur.
+public class SlotReservationService {
+    private final NatsService natsService;
+    private final VelocityConfigManager configManager;
+    private final Logger logger;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final Map<String, List<PendingSlot>> pendingByServer = new ConcurrentHashMap<>();
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final LongAdder unanswered = new LongAdder();
+    private String proxyId;
+    private ScheduledExecutorService scheduler;
+
+    public SlotReservationService(NatsService natsService, VelocityConfigManager configManager, Logger logger) {
+        this.natsService = natsService;
+        this.configManager = configManager;
+        this.logger = logger;
+    }
+
+    public void start() {
+        if (!configManager.isReservationEnabled()) {
+            return;
+        }
+
+        if (running.compareAndSet(false, true)) {
+            String configuredId = configManager.getProxyId();
+            proxyId = configuredId != null && !configuredId.isEmpty() ? configuredId : NetworkUtils.getLocalIPAddress();
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+
+            logger.info("Réservation de places auprès des serveurs activée.");
+        }
+    }
+
+    public void stop() {
+        if (running.compareAndSet(true, false)) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+
+            // Ne laisser aucun joueur suspendu : les demandes en cours sont accordées
+            pendingByServer.keySet().forEach(serverName -> complete(pendingByServer.remove(serverName), Integer.MAX_VALUE));
+            logger.info("Réservation de places arrêtée.");
+        }
+    }
+
+    public boolean isEnabled() {
+        return running.get();
+    }
+
+    // true si le serveur accorde la place ; accordé d'office si le service est désactivé ou le serveur muet
+    public CompletableFuture<Boolean> reserve(String serverName, UUID playerId) {
+        if (!running.get() || !natsService.isConnected()) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        // La première demande d'un lot programme son envoi ; les suivantes s'y ajoutent
+        pendingByServer.compute(serverName, (name, pending) -> {
+            if (pending == null) {
+                pending = new ArrayList<>();
+                scheduler.schedule(() -> flush(name), configManager.getReservationBatchWindow(), TimeUnit.MILLISECONDS);
+            }
+            pending.add(new PendingSlot(playerId.toString(), future));
+            return pending;
+        });
+
+        return future;
+    }
+
+    // Rend la place d'un joueur qui n'ira finalement pas sur ce serveur, sans attendre l'expiration du jeton
+    public void release(String serverName, UUID playerId) {
+        if (!running.get() || !natsService.isConnected()) {
+            return;
+        }
+
+        String subject = configManager.getReservationTopic() + "." + serverName;
+        natsService.publish(subject, ProtobufSerializer.serializeSlotRequest(
+            new SlotRequest(proxyId, List.of(playerId.toString()), true)));
+    }
+
+    private void flush(String serverName) {
+        List<PendingSlot> pending = pendingByServer.remove(serverName);
+        if (pending == null) return;
+
+        List<String> playerIds = new ArrayList<>(pending.size());
+        for (PendingSlot slot : pending) {
+            playerIds.add(slot.playerId);
+        }
+
+        String subject = configManager.getReservationTopic() + "." + serverName;
+        byte[] request = ProtobufSerializer.serializeSlotRequest(new SlotRequest(proxyId, playerIds, false));
+
+        natsService.request(subject, request, Duration.ofMillis(configManager.getReservationTimeout()))
+            .whenComplete((reply, error) -> {
+                if (error != null) {
+                    // Serveur sans réservation (ancienne version) ou trop lent : ne pas bloquer les connexions
+                    unanswered.add(pending.size());
+                    logger.debug("Pas de réponse de {} à la réservation de {} places: {}", serverName, pending.size(), error.getMessage());
+                    complete(pending, Integer.MAX_VALUE);
+                    return;
+                }
+
+                try {
+                    int count = ProtobufSerializer.deserializeSlotGrant(reply);
+                    granted.add(Math.min(count, pending.size()));
+                    denied.add(Math.max(0, pending.size() - count));
+                    complete(pending, count);
+                } catch (Exception e) {
+                    logger.error("Réponse de réservation invalide de {}", serverName, e);
+                    complete(pending, Integer.MAX_VALUE);
+                }
+            });
+    }
+
+    private static void complete(List<PendingSlot> pending, int count) {
+        if (pending == null) return;
+
+        for (int i = 0; i < pending.size(); i++) {
+            pending.get(i).future.complete(i < count);
+        }
+    }
+
+    private static class PendingSlot {
+        private final String playerId;
+        private final CompletableFuture<Boolean> future;
+
+        private PendingSlot(String playerId, CompletableFuture<Boolean> future) {
+            this.playerId = playerId;
+            this.future = future;
+        }
+    }
+
+    public String format() {
+        return granted.sum() + " accordées, " + denied.sum() + " refusées, " + unanswered.sum() + " sans réponse";
+    }
+}
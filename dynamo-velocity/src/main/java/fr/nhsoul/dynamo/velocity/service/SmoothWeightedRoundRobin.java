@@ -0,0 +1,67 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Round robin pondéré « lisse » (algorithme de nginx) pour un groupe.
+// Le poids courant de chaque serveur est conservé par nom, il survit donc aux changements de la liste.
+public class SmoothWeightedRoundRobin {
+    private final Map<String, Weight> weights = new HashMap<>();
+    private List<ServerInfo> lastMembers;
+
+    // servers : candidats de cette sélection (serveur quitté ou suspects écartés) ;
+    // members : liste publiée par l'index du groupe, dont l'instance ne change qu'avec l'appartenance
+    public synchronized ServerInfo select(List<ServerInfo> servers, List<ServerInfo> members) {
+        if (servers.isEmpty()) return null;
+
+        // Un serveur écarté le temps d'une sélection garde son poids courant ; seuls les départs du groupe sont purgés
+        if (members != lastMembers) {
+            prune(members);
+            lastMembers = members;
+        }
+
+        ServerInfo best = null;
+        Weight bestWeight = null;
+        long total = 0;
+
+        for (int i = 0; i < servers.size(); i++) {
+            ServerInfo serverInfo = servers.get(i);
+            Weight weight = weights.computeIfAbsent(serverInfo.getName(), k -> new Weight());
+
+            int effective = getEffectiveWeight(serverInfo);
+            weight.current += effective;
+            total += effective;
+
+            if (bestWeight == null || weight.current > bestWeight.current) {
+                best = serverInfo;
+                bestWeight = weight;
+            }
+        }
+
+        bestWeight.current -= total;
+        return best;
+    }
+
+    private void prune(List<ServerInfo> servers) {
+        Set<String> names = new HashSet<>();
+        for (ServerInfo serverInfo : servers) {
+            names.add(serverInfo.getName());
+        }
+        weights.keySet().retainAll(names);
+    }
+
+    private static int getEffectiveWeight(ServerInfo serverInfo) {
+        // Poids explicite du serveur, sinon sa capacité
+        int weight = serverInfo.getWeight() > 0 ? serverInfo.getWeight() : serverInfo.getMaxPlayers();
+        return Math.max(1, weight);
+    }
+
+    private static class Weight {
+        private long current;
+    }
+}
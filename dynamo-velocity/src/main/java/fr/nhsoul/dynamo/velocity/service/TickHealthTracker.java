@@ -0,0 +1,46 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Moyenne exponentielle du MSPT remonté par chaque serveur.
+// Le lissage dépend du temps écoulé entre deux échantillons, pas de leur nombre :
+// un pic isolé (GC) ne suffit pas à faire basculer le routage.
+public class TickHealthTracker {
+    private final Map<String, Ewma> msptByServer = new ConcurrentHashMap<>();
+    private final long smoothingMs;
+
+    public TickHealthTracker(long smoothingMs) {
+        this.smoothingMs = Math.max(1, smoothingMs);
+    }
+
+    public void record(String serverName, double mspt) {
+        if (Double.isNaN(mspt) || mspt <= 0) return;
+
+        msptByServer.computeIfAbsent(serverName, k -> new Ewma()).add(mspt, System.currentTimeMillis(), smoothingMs);
+    }
+
+    public double getSmoothedMspt(String serverName) {
+        Ewma ewma = msptByServer.get(serverName);
+        return ewma != null ? ewma.value : 0.0;
+    }
+
+    public void remove(String serverName) {
+        msptByServer.remove(serverName);
+    }
+
+    private static class Ewma {
+        private volatile double value;
+        private long lastUpdate;
+
+        private synchronized void add(double sample, long now, long smoothingMs) {
+            if (lastUpdate == 0) {
+                value = sample;
+            } else {
+                double alpha = 1 - Math.exp(-(double) Math.max(0, now - lastUpdate) / smoothingMs);
+                value += alpha * (sample - value);
+            }
+            lastUpdate = now;
+        }
+    }
+}
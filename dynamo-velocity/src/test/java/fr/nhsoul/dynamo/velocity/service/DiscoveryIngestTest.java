@@ -0,0 +1,89 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.ServerEvent;
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+import fr.nhsoul.dynamo.common.util.ProtobufSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// File pleine : seuls les heartbeats sont abandonnés, un enregistrement ou un retrait attend sa place
+class DiscoveryIngestTest {
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private final BlockingQueue<ServerEvent> decoded = new LinkedBlockingQueue<>();
+    private final DiscoveryIngest ingest = new DiscoveryIngest((event, arrivalMs) -> {
+        try {
+            unblock.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        decoded.add(event);
+    }, 1, 1, 5, LoggerFactory.getLogger(DiscoveryIngestTest.class));
+
+    @AfterEach
+    void tearDown() {
+        unblock.countDown();
+        ingest.stop();
+    }
+
+    @Test
+    void dropsOnlyHeartbeatsWhenFull() throws Exception {
+        ingest.start();
+
+        // Le premier occupe le décodeur, bloqué dans le sink ; le second remplit la file
+        ingest.offer(event(ServerEvent.EventType.HEARTBEAT, "hb-1"));
+        waitForBacklog(0);
+        ingest.offer(event(ServerEvent.EventType.HEARTBEAT, "hb-2"));
+
+        ingest.offer(event(ServerEvent.EventType.HEARTBEAT, "hb-3"));
+        assertEquals(1, ingest.getDropped());
+
+        Thread register = new Thread(() -> ingest.offer(event(ServerEvent.EventType.REGISTER, "reg")));
+        Thread unregister = new Thread(() -> ingest.offer(event(ServerEvent.EventType.UNREGISTER, "unreg")));
+        register.start();
+        unregister.start();
+
+        // Toujours en attente d'une place, bien au-delà de maxBlockMs
+        register.join(200);
+        unregister.join(200);
+        assertTrue(register.isAlive());
+        assertTrue(unregister.isAlive());
+
+        unblock.countDown();
+        register.join(2_000);
+        unregister.join(2_000);
+
+        assertEquals(1, ingest.getDropped());
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            ServerEvent event = decoded.poll(2, TimeUnit.SECONDS);
+            assertNotNull(event);
+            names.add(event.getServerInfo().getName());
+        }
+        assertEquals(Set.of("hb-1", "hb-2", "reg", "unreg"), names);
+    }
+
+    private void waitForBacklog(int backlog) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (ingest.getBacklog() != backlog && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static byte[] event(ServerEvent.EventType type, String serverName) {
+        return ProtobufSerializer.serializeServerEvent(
+            new ServerEvent(type, new ServerInfo(serverName, "10.0.0.1", 25565, List.of("lobby"))));
+    }
+}
@@ -0,0 +1,84 @@
+package fr.nhsoul.dynamo.velocity.service;
+
+import fr.nhsoul.dynamo.common.model.LoadBalancingStrategy;
+import fr.nhsoul.dynamo.common.model.ServerInfo;
+import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager;
+import fr.nhsoul.dynamo.velocity.config.VelocityConfigManager.GroupConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LoadBalancingServiceTest {
+    private static final String GROUP = "lobby";
+
+    private final GroupIndex groupIndex = new GroupIndex();
+    private final ConsistentHashRing ring = new ConsistentHashRing();
+    private ServerDiscoveryService discoveryService;
+    private VelocityConfigManager configManager;
+
+    @BeforeEach
+    void setUp() {
+        discoveryService = mock(ServerDiscoveryService.class);
+        when(discoveryService.getGroupIndex()).thenReturn(groupIndex);
+        when(discoveryService.getFailureDetector()).thenReturn(new PhiAccrualFailureDetector(8.0, 100));
+
+        configManager = mock(VelocityConfigManager.class);
+        when(configManager.getServerTimeout()).thenReturn(30);
+        when(configManager.getPendingConnectionTimeout()).thenReturn(10);
+        when(configManager.getHashLoadOverflow()).thenReturn(25);
+        when(configManager.getAffinityMaxSize()).thenReturn(100);
+        when(configManager.getGroupsConfig())
+            .thenReturn(Map.of(GROUP, new GroupConfig(LoadBalancingStrategy.CONSISTENT_HASH, null, 0)));
+
+        groupIndex.addListener(ring);
+        for (int i = 0; i < 4; i++) {
+            ServerInfo serverInfo = new ServerInfo("lobby-" + i, "10.0.0." + i, 25565, List.of(GROUP));
+            serverInfo.setCurrentPlayers(10);
+            serverInfo.setMaxPlayers(100);
+            groupIndex.update(serverInfo);
+        }
+    }
+
+    @Test
+    void consistentHashSkipsExcludedOwner() {
+        for (int i = 0; i < 500; i++) {
+            UUID playerId = new UUID(i * 0x9e3779b97f4a7c15L, i);
+            String owner = ring.select(GROUP, playerId, serverInfo -> true).getName();
+
+            // Service neuf à chaque joueur : aucune connexion en cours ne vient écarter le propriétaire à sa place
+            LoadBalancingService loadBalancing = new LoadBalancingService(discoveryService, configManager,
+                LoggerFactory.getLogger(LoadBalancingServiceTest.class));
+            loadBalancing.start();
+
+            Optional<ServerInfo> selected = loadBalancing.selectServer(GROUP, playerId, Set.of(owner));
+            assertTrue(selected.isPresent());
+            assertNotEquals(owner, selected.get().getName());
+        }
+    }
+
+    @Test
+    void consistentHashSkipsEveryDeniedServer() {
+        LoadBalancingService loadBalancing = new LoadBalancingService(discoveryService, configManager,
+            LoggerFactory.getLogger(LoadBalancingServiceTest.class));
+        loadBalancing.start();
+
+        UUID playerId = UUID.randomUUID();
+        Set<String> denied = Set.of("lobby-0", "lobby-1", "lobby-2");
+
+        Optional<ServerInfo> selected = loadBalancing.selectServer(GROUP, playerId, denied);
+        assertTrue(selected.isPresent());
+        assertFalse(denied.contains(selected.get().getName()));
+    }
+}